@@ -24,6 +24,7 @@ public class BeyondLand {
 		ListPanel lpn = new ListPanel();
 		SpaceModel model = new SpaceModel(fr, lpn);
 		lpn.attachModel(model);
+		fr.attachModel(model);
 		UIMenu menu = new UIMenu(fr, model);
 		JPopupMenu.setDefaultLightWeightPopupEnabled(false);
 		ToolTipManager.sharedInstance().setLightWeightPopupEnabled(false);
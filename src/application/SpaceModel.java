@@ -6,6 +6,8 @@ import gui.UIMenu;
 
 import java.util.ArrayList;
 
+import org.apache.commons.math3.geometry.euclidean.threed.Vector3D;
+
 import surfaces.*;
 
 /**
@@ -44,7 +46,7 @@ public class SpaceModel {
 	public void addSurface(Surface3D s) {
 		surfaces.add(s);
 		list.addSurface(surfaces.get(surfaces.size() - 1));
-		frame.pushStructure(s.triangulate());
+		frame.pushStructure(s);
 	}
 
 	/**
@@ -95,7 +97,7 @@ public class SpaceModel {
 		}
 		if (held) {
 			list.addSurface(surfaces.get(surfaces.size() - 1));
-			frame.pushStructure(surfaces.get(surfaces.size() - 1).triangulate());
+			frame.pushStructure(surfaces.get(surfaces.size() - 1));
 		}
 	}
 
@@ -183,7 +185,7 @@ public class SpaceModel {
 				} else if (flag.contains("Z")) {
 					SurfaceUtilities.rotateZ(sE, phi);
 				}
-				frame.replaceStructure(i, surfaces.get(i).triangulate());
+				frame.replaceStructure(i, surfaces.get(i));
 			}
 		}
 	}
@@ -206,7 +208,7 @@ public class SpaceModel {
 				} else if (flag.contains("Z")) {
 					SurfaceUtilities.translateZ(sE, delta);
 				}
-				frame.replaceStructure(i, surfaces.get(i).triangulate());
+				frame.replaceStructure(i, surfaces.get(i));
 			}
 		}
 	}
@@ -220,13 +222,26 @@ public class SpaceModel {
 	 * @return Returns the label of a newly formed mesh
 	 */
 	public String clarkinate(String label) {
+		return clarkinate(label, SurfaceUtilities.CATMULL_CLARK);
+	}
+	
+	/**
+	 * Method for applying a subdivision scheme to mesh specified by the
+	 * label
+	 * 
+	 * @param label Mesh label
+	 * @param scheme Subdivision scheme, see SurfaceUtilities
+	 * 
+	 * @return Returns the label of a newly formed mesh
+	 */
+	public String clarkinate(String label, String scheme) {
 		for (int i = 0; i < surfaces.size(); i++) {
 			if (surfaces.get(i).getLabel().equals(label)) {
 				FVPolygonMesh sE = (FVPolygonMesh) surfaces.get(i);
-				FVPolygonMesh tmp = SurfaceUtilities.applyCCsubDivision(sE, CLARK_ITERATIONS);
+				FVPolygonMesh tmp = SurfaceUtilities.applySubdivision(sE, scheme, CLARK_ITERATIONS, true);
 				surfaces.remove(i);
 				surfaces.add(i, tmp);
-				frame.replaceStructure(i, surfaces.get(i).triangulate());
+				frame.replaceStructure(i, surfaces.get(i));
 				return tmp.getLabel();
 			}
 		}
@@ -247,7 +262,7 @@ public class SpaceModel {
 			if (surfaces.get(i).getLabel().equals(label)) {
 				EditableSurface sE = (EditableSurface) surfaces.get(i);
 				sE.addVertex(new Point3D(x, y, z), instruct);
-				frame.replaceStructure(i, surfaces.get(i).triangulate());
+				frame.replaceStructure(i, surfaces.get(i));
 			}
 		}
 	}
@@ -276,7 +291,7 @@ public class SpaceModel {
 				EditableSurface sE = (EditableSurface) surfaces.get(i);
 				sE.add3Vertices(new Point3D(x1, y1, z1), new Point3D(x2, y2, z2),
 						new Point3D(x3, y3, z3), instruct, w);
-				frame.replaceStructure(i, surfaces.get(i).triangulate());
+				frame.replaceStructure(i, surfaces.get(i));
 			}
 		}
 	}
@@ -300,7 +315,7 @@ public class SpaceModel {
 			if (surfaces.get(i).getLabel().equals(label)) {
 				EditableSurface sE = (EditableSurface) surfaces.get(i);
 				sE.add2Vertices(new Point3D(x1, y1, z1), new Point3D(x2, y2, z2), instruct, w);
-				frame.replaceStructure(i, surfaces.get(i).triangulate());
+				frame.replaceStructure(i, surfaces.get(i));
 			}
 		}
 	}
@@ -323,6 +338,36 @@ public class SpaceModel {
 		}
 	}
 
+	/**
+	 * Method for highlighting the NURBS surface which a ray hits first, as when it is
+	 * clicked on; the ray is intersected with the surfaces themselves, not their drawn
+	 * triangles
+	 * 
+	 * @param origin Start of the ray
+	 * @param direction Direction of the ray
+	 * 
+	 * @return Returns the label of the surface hit, or null if the ray misses them all
+	 */
+	public String pickStructure(Point3D origin, Vector3D direction) {
+		Surface3D hit = null;
+		double nearest = Double.POSITIVE_INFINITY;
+		for (int i = 0; i < surfaces.size(); i++) {
+			if (surfaces.get(i) instanceof NURBS) {
+				double[] r = ((NURBS) surfaces.get(i)).intersect(origin, direction);
+				if (r != null && r[2] < nearest) {
+					nearest = r[2];
+					hit = surfaces.get(i);
+				}
+			}
+		}
+		if (hit == null) {
+			return null;
+		}
+		list.selectSurface(hit.getLabel());
+		higlightStructure(hit.getLabel());
+		return hit.getLabel();
+	}
+
 	/**
 	 * Method for identifying if a surface specified by the label is a NURBS 
 	 * 
@@ -393,7 +438,7 @@ public class SpaceModel {
 			if (surfaces.get(i).getLabel().equals(label)) {
 				EditableSurface sE = (EditableSurface) surfaces.get(i);
 				if (sE instanceof NURBS) {
-					frame.replaceStructure(i, surfaces.get(i).triangulate());
+					frame.replaceStructure(i, surfaces.get(i));
 					return;
 				}
 			}
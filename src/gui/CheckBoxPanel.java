@@ -63,11 +63,16 @@ public class CheckBoxPanel extends JPanel implements ActionListener {
 		JRadioButton jRb2 = new JRadioButton(ParametricSurface3D.SIMPSON);
 		jRb2.setFocusable(false);
 		jRb2.addActionListener(this);
+		JRadioButton jRb3 = new JRadioButton(ParametricSurface3D.GAUSS_KRONROD);
+		jRb3.setFocusable(false);
+		jRb3.addActionListener(this);
 		ButtonGroup bG = new ButtonGroup();
 		bG.add(jRb1);
 		bG.add(jRb2);
+		bG.add(jRb3);
 		this.add(jRb1);
 		this.add(jRb2);
+		this.add(jRb3);
 	}
 	
 	/**
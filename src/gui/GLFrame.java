@@ -4,15 +4,21 @@ import java.awt.BorderLayout;
 import java.awt.Color;
 import java.awt.Dimension;
 import java.awt.Toolkit;
+import java.awt.event.MouseAdapter;
+import java.awt.event.MouseEvent;
 import java.awt.event.WindowAdapter;
 import java.awt.event.WindowEvent;
 import java.util.ArrayList;
 
 import javax.swing.JFrame;
 import javax.swing.JPanel;
+import javax.swing.SwingUtilities;
 
+import org.apache.commons.math3.geometry.euclidean.threed.Vector3D;
+
+import application.SpaceModel;
 import surfaces.Point3D;
-import surfaces.Triangle3D;
+import surfaces.Surface3D;
 
 import com.jogamp.opengl.GLCapabilities;
 import com.jogamp.opengl.GLProfile;
@@ -27,12 +33,14 @@ public class GLFrame extends JFrame {
 	private final static GLProfile PROFILE				= GLProfile.get(GLProfile.GL2);
 	private final static GLCapabilities CAPABILITIES 	= new GLCapabilities(PROFILE);
 	private final static int FPS_MAX					= 60;
+	private final static long DETAIL_BUDGET				= 64L << 20;	// bytes of cached levels of detail
 	
 	private GLCanvas 	canvas;
 	private FPSAnimator animator;
 	private Renderer	renderer;
+	private LODCache	cache;
 	
-	private ArrayList<ArrayList<Triangle3D>> drawables = new ArrayList<>();
+	private ArrayList<Surface3D> drawables = new ArrayList<>();
 	
 	/**
 	 * Constructs a new frame
@@ -53,7 +61,8 @@ public class GLFrame extends JFrame {
 		CAPABILITIES.setBackgroundOpaque(false);
 		
 		canvas = new GLCanvas(CAPABILITIES);
-		renderer = new Renderer();
+		cache = new LODCache(DETAIL_BUDGET);
+		renderer = new Renderer(cache);
 		canvas.addGLEventListener(renderer);
 		canvas.setSize(canvasWidth, canvasHeight);
 		canvas.setFocusable(false);
@@ -89,39 +98,73 @@ public class GLFrame extends JFrame {
 	}
 	
 	/**
-	 * Method for pushing triangulated structure to GLCanvas
+	 * Method for attaching the model, which is told about the structures clicked on
 	 * 
-	 * @param struct List of triangles
+	 * @param model SpaceModel object to be updated
 	 */
-	public void pushStructure(ArrayList<Triangle3D> struct) {
+	public void attachModel(final SpaceModel model) {
+		canvas.addMouseListener(new MouseAdapter() {
+			@Override
+			public void mouseClicked(MouseEvent e) {
+				if (SwingUtilities.isLeftMouseButton(e)) {
+					double[] r = renderer.pickRay(e.getX(), e.getY(), canvas.getWidth(), 
+							Math.max(canvas.getHeight(), 1));
+					model.pickStructure(new Point3D(r[0], r[1], r[2]), new Vector3D(r[3], r[4], r[5]));
+				}
+			}
+		});
+	}
+	
+	/**
+	 * Method for pushing a structure to GLCanvas, which draws it at the level of detail
+	 * suiting its size on screen
+	 * 
+	 * @param struct Surface
+	 */
+	public void pushStructure(Surface3D struct) {
+		cache.update(struct);
 		drawables.add(struct);
-		renderer.setTriangles(drawables);
+		renderer.setSurfaces(drawables);
 	}
 	
 	/**
-	 * Method for removing triangulated structure from GLCanvas
+	 * Method for removing a structure from GLCanvas
 	 * 
 	 * @param index Index within the list
 	 */
 	public void removeStructure(int index) {
-		drawables.remove(index);
-		renderer.setTriangles(drawables);
+		cache.remove(drawables.remove(index));
+		renderer.setSurfaces(drawables);
 	}
 	
 	/**
-	 * Method for replacing triangulated structure with the specified one
+	 * Method for replacing a structure with the specified one, or for redrawing a
+	 * structure which has changed; its cached levels of detail are dropped
 	 * 
 	 * @param index Index of the replaceable structure
 	 * @param struct New structure
 	 */
-	public void replaceStructure(int index, ArrayList<Triangle3D> struct) {
-		drawables.remove(index);
+	public void replaceStructure(int index, Surface3D struct) {
+		Surface3D old = drawables.remove(index);
+		if (old != struct) {
+			cache.remove(old);
+		}
+		cache.update(struct);
 		if (drawables.size() == 0) {
 			drawables.add(struct);
 		} else {
 			drawables.add(index, struct);	
 		}
-		renderer.setTriangles(drawables);
+		renderer.setSurfaces(drawables);
+	}
+	
+	/**
+	 * Method for setting the memory budget of the cached levels of detail
+	 * 
+	 * @param bytes Budget in bytes
+	 */
+	public void setDetailBudget(long bytes) {
+		cache.setBudget(bytes);
 	}
 	
 	/**
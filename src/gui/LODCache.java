@@ -0,0 +1,250 @@
+package gui;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.IdentityHashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import javax.swing.SwingUtilities;
+
+import surfaces.Point3D;
+import surfaces.Surface3D;
+import surfaces.Triangle3D;
+
+/**
+ * Class for keeping the levels of detail of the drawn surfaces. A level is triangulated the
+ * first time it is asked for and kept in one least recently used order for all surfaces;
+ * when the estimated size of the levels exceeds the memory budget the oldest ones are
+ * dropped. Levels are triangulated on the event dispatch thread, where the model changes
+ * the surfaces, and until a level is ready the closest cached one is drawn instead.
+ */
+class LODCache {
+	private final static int TRIANGLE_BYTES 	= 64;	// estimated size of a triangle with its share of the points
+
+	private long budget;
+	private long used;
+	private LinkedHashMap<Key, ArrayList<Triangle3D>> levels 	= new LinkedHashMap<>(16, 0.75f, true);
+	private IdentityHashMap<Surface3D, Info> surfaces 			= new IdentityHashMap<>();
+	private HashSet<Key> pending 								= new HashSet<>();
+
+	/**
+	 * Constructs an empty cache
+	 *
+	 * @param budget Memory budget in bytes
+	 */
+	LODCache(long budget) {
+		this.budget = budget;
+	}
+
+	/**
+	 * Method for changing the memory budget, dropping levels if it shrinks
+	 *
+	 * @param budget Memory budget in bytes
+	 */
+	synchronized void setBudget(long budget) {
+		this.budget = budget;
+		evict();
+	}
+
+	/**
+	 * Method for adding a surface, or for forgetting its levels after it has changed. The
+	 * level last asked for, or the coarsest one for a new surface, is triangulated right
+	 * away, so the surface keeps being drawn at its level while it is edited.
+	 *
+	 * @param s Surface
+	 */
+	void update(Surface3D s) {
+		Info info = new Info(s.lodLevels());
+		synchronized (this) {
+			Info old = surfaces.get(s);
+			info.drawn = old == null ? info.levels - 1 : Math.min(old.drawn, info.levels - 1);
+			drop(s);
+			surfaces.put(s, info);
+		}
+		generate(new Key(s, info.drawn));
+	}
+
+	/**
+	 * Method for removing a surface and its levels
+	 *
+	 * @param s Surface
+	 */
+	synchronized void remove(Surface3D s) {
+		drop(s);
+		surfaces.remove(s);
+	}
+
+	/**
+	 * Method for accessing a level of a surface. A level which is not cached is scheduled
+	 * for triangulation and the closest cached level, the coarser one first, is returned.
+	 *
+	 * @param s Surface
+	 * @param level Level of detail
+	 *
+	 * @return Returns the triangles, or null if no level of the surface is cached
+	 */
+	synchronized ArrayList<Triangle3D> triangles(Surface3D s, int level) {
+		Info info = surfaces.get(s);
+		if (info == null) {
+			return null;
+		}
+		info.drawn = level;
+		final Key key = new Key(s, level);
+		ArrayList<Triangle3D> t = levels.get(key);
+		if (t != null) {
+			return t;
+		}
+		if (pending.add(key)) {
+			SwingUtilities.invokeLater(new Runnable() {
+				@Override
+				public void run() {
+					generate(key);
+				}
+			});
+		}
+		for (int d = 1; d < info.levels; d++) {
+			t = levels.get(new Key(s, level + d));
+			if (t == null) {
+				t = levels.get(new Key(s, level - d));
+			}
+			if (t != null) {
+				return t;
+			}
+		}
+		return null;
+	}
+
+	/**
+	 * Method for accessing the number of levels of a surface
+	 *
+	 * @param s Surface
+	 *
+	 * @return Returns the number of levels, 1 for unknown surfaces
+	 */
+	synchronized int levels(Surface3D s) {
+		Info info = surfaces.get(s);
+		return info == null ? 1 : info.levels;
+	}
+
+	/**
+	 * Method for accessing the bounding sphere of a surface, taken from the first level
+	 * triangulated
+	 *
+	 * @param s Surface
+	 *
+	 * @return Returns the centre and the radius, or null if unknown
+	 */
+	synchronized double[] bounds(Surface3D s) {
+		Info info = surfaces.get(s);
+		return info == null ? null : info.bounds;
+	}
+
+	private void generate(Key key) {
+		Info info;
+		synchronized (this) {
+			pending.remove(key);
+			info = surfaces.get(key.surface);
+			if (info == null || levels.containsKey(key)) {
+				return;
+			}
+		}
+		ArrayList<Triangle3D> t = key.surface.triangulate(key.level);
+		synchronized (this) {
+			if (surfaces.get(key.surface) != info) {
+				return;
+			}
+			if (info.bounds == null) {
+				info.bounds = sphere(t);
+			}
+			ArrayList<Triangle3D> old = levels.put(key, t);
+			if (old != null) {
+				used -= bytes(old);
+			}
+			used += bytes(t);
+			evict();
+		}
+	}
+
+	private void drop(Surface3D s) {
+		Iterator<Map.Entry<Key, ArrayList<Triangle3D>>> it = levels.entrySet().iterator();
+		while (it.hasNext()) {
+			Map.Entry<Key, ArrayList<Triangle3D>> e = it.next();
+			if (e.getKey().surface == s) {
+				used -= bytes(e.getValue());
+				it.remove();
+			}
+		}
+	}
+
+	//the least recently used levels go first, the last one used always stays
+	private void evict() {
+		Iterator<ArrayList<Triangle3D>> it = levels.values().iterator();
+		while (used > budget && levels.size() > 1) {
+			used -= bytes(it.next());
+			it.remove();
+		}
+	}
+
+	private static long bytes(ArrayList<Triangle3D> t) {
+		return (long) TRIANGLE_BYTES * t.size();
+	}
+
+	private static double[] sphere(ArrayList<Triangle3D> t) {
+		double[] min = {Double.MAX_VALUE, Double.MAX_VALUE, Double.MAX_VALUE};
+		double[] max = {-Double.MAX_VALUE, -Double.MAX_VALUE, -Double.MAX_VALUE};
+		for (Triangle3D tr : t) {
+			for (Point3D p : tr.vertices()) {
+				min[0] = Math.min(min[0], p.getX());
+				min[1] = Math.min(min[1], p.getY());
+				min[2] = Math.min(min[2], p.getZ());
+				max[0] = Math.max(max[0], p.getX());
+				max[1] = Math.max(max[1], p.getY());
+				max[2] = Math.max(max[2], p.getZ());
+			}
+		}
+		if (t.isEmpty()) {
+			return null;
+		}
+		double dx = max[0] - min[0];
+		double dy = max[1] - min[1];
+		double dz = max[2] - min[2];
+		return new double[] {(min[0] + max[0]) / 2, (min[1] + max[1]) / 2, (min[2] + max[2]) / 2,
+				Math.sqrt(dx * dx + dy * dy + dz * dz) / 2};
+	}
+
+	private static class Info {
+		private int levels;
+		private int drawn;
+		private double[] bounds;
+
+		Info(int levels) {
+			this.levels = levels;
+		}
+	}
+
+	private static class Key {
+		private Surface3D surface;
+		private int level;
+
+		Key(Surface3D surface, int level) {
+			this.surface = surface;
+			this.level = level;
+		}
+
+		@Override
+		public boolean equals(Object o) {
+			if (!(o instanceof Key)) {
+				return false;
+			}
+			Key k = (Key) o;
+			return k.surface == surface && k.level == level;
+		}
+
+		@Override
+		public int hashCode() {
+			return 31 * System.identityHashCode(surface) + level;
+		}
+	}
+}
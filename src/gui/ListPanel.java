@@ -26,6 +26,7 @@ import application.SpaceModel;
 import surfaces.EditableSurface;
 import surfaces.NURBS;
 import surfaces.Surface3D;
+import surfaces.SurfaceUtilities;
 
 /**
  * Class for panel representing accessible list of surfaces
@@ -144,6 +145,15 @@ public class ListPanel extends JPanel {
 		}
 	}
 
+	/**
+	 * Method for selecting the surface with the specified label in the list
+	 * 
+	 * @param label Surface label
+	 */
+	public void selectSurface(String label) {
+		surfaceList.setSelectedValue(label, true);
+	}
+
 	/**
 	 * Method for attaching a spatial model to the list
 	 * 
@@ -493,7 +503,46 @@ public class ListPanel extends JPanel {
 				break;
 			case CLARK:
 				if (model.isFVPolyMesh(currentChoice)) {
-					String l = model.clarkinate(currentChoice);
+					JPanel myPanel = new JPanel();
+					myPanel.setLayout(new GridLayout(5, 1));
+					JRadioButton b1 = new JRadioButton(SurfaceUtilities.CATMULL_CLARK);
+					b1.setSelected(true);
+					myPanel.add(b1);
+					JRadioButton b2 = new JRadioButton(SurfaceUtilities.LOOP);
+					myPanel.add(b2);
+					JRadioButton b3 = new JRadioButton(SurfaceUtilities.SQRT3);
+					myPanel.add(b3);
+					JRadioButton b4 = new JRadioButton(SurfaceUtilities.ADAPTIVE_CC);
+					myPanel.add(b4);
+					JRadioButton b5 = new JRadioButton(SurfaceUtilities.LEGACY_CC);
+					myPanel.add(b5);
+
+					ButtonGroup bG = new ButtonGroup();
+					bG.add(b1);
+					bG.add(b2);
+					bG.add(b3);
+					bG.add(b4);
+					bG.add(b5);
+
+					int result = JOptionPane.showConfirmDialog(null, myPanel, 
+							"Choose subdivision scheme", JOptionPane.OK_CANCEL_OPTION);
+					if (result != JOptionPane.OK_OPTION) {
+						break;
+					}
+					String scheme = SurfaceUtilities.CATMULL_CLARK;
+					if (b2.isSelected()) {
+						scheme = SurfaceUtilities.LOOP;
+					}
+					else if (b3.isSelected()) {
+						scheme = SurfaceUtilities.SQRT3;
+					}
+					else if (b4.isSelected()) {
+						scheme = SurfaceUtilities.ADAPTIVE_CC;
+					}
+					else if (b5.isSelected()) {
+						scheme = SurfaceUtilities.LEGACY_CC;
+					}
+					String l = model.clarkinate(currentChoice, scheme);
 					String[] arr = new String[surfaceList.getModel().getSize()];
 					boolean located = false;
 					for (int i = 0; i < surfaceList.getModel().getSize(); i++) {
@@ -14,6 +14,7 @@ import java.awt.event.MouseWheelListener;
 import java.util.ArrayList;
 
 import surfaces.Point3D;
+import surfaces.Surface3D;
 import surfaces.Triangle3D;
 
 import com.jogamp.opengl.GL;
@@ -38,13 +39,17 @@ MouseWheelListener {
 
 	private final float MAX_Z 							= 100000.0f;	// maximal zoom in 
 	private final float MIN_Z 							= -100000.0f;	
+	private final double FOVY 							= 45.0;		// vertical field of view in degrees
+	private final double FULL_DETAIL 					= 512;		// screen height in pixels from which level 0 is drawn
 
 	private float translateZ 							= -10.0f; 	// z-location
 	private float translateX 							= 0.0f; 	
 	private float translateY 							= 0.0f; 	
 	private float rotateSpeedXIncrement 				= 10;     // adjusting x rotational speed
 	private float rotateSpeedYIncrement 				= 10;     // adjusting y rotational speed
-	private ArrayList<ArrayList<Triangle3D>> triangles 	= new ArrayList<>();
+	private ArrayList<Surface3D> surfaces 				= new ArrayList<>();
+	private LODCache cache;
+	private int height 									= 1;	// viewport height in pixels
 	private ArrayList<Point3D> highlighted				= new ArrayList<>();
 	private GLU glu 									= new GLU();
 	private TextRenderer textRenderer;
@@ -60,6 +65,15 @@ MouseWheelListener {
 	private float rotateX;    // rotation amounts about axes, controlled by keyboard
 	private float rotateY;
 
+	/**
+	 * Constructs a new renderer
+	 * 
+	 * @param cache Levels of detail of the structures
+	 */
+	Renderer(LODCache cache) {
+		this.cache = cache;
+	}
+
 	/**
 	 * Method for displaying renderable structures
 	 * 
@@ -123,8 +137,12 @@ MouseWheelListener {
 			gl.glEnd();
 		}
 
-		for (int k = 0; k < triangles.size(); k++) {
-			ArrayList<Triangle3D> trl = triangles.get(k); 
+		for (int k = 0; k < surfaces.size(); k++) {
+			Surface3D s = surfaces.get(k);
+			ArrayList<Triangle3D> trl = cache.triangles(s, level(s));
+			if (trl == null) {
+				continue;
+			}
 			double zMax = Integer.MIN_VALUE;
 			double yMax = Integer.MIN_VALUE;
 			double xMax = Integer.MIN_VALUE;
@@ -282,13 +300,74 @@ MouseWheelListener {
 		}
 	}
 
+	/**
+	 * Picks the level of detail of a structure from the height of its bounding sphere
+	 * on screen: level 0 from FULL_DETAIL pixels up, one level coarser for every halving
+	 * below that
+	 */
+	private int level(Surface3D s) {
+		int levels = cache.levels(s);
+		double[] b = cache.bounds(s);
+		if (b == null) {
+			return levels - 1;
+		}
+		//centre in eye coordinates, transformed as in renderTriangles
+		double x = b[0] / 10.0, y = b[1] / 10.0, z = b[2] / 10.0, r = b[3] / 10.0;
+		double ay = Math.toRadians(rotateY);
+		double ax = Math.toRadians(rotateX);
+		double zy = - x * Math.sin(ay) + z * Math.cos(ay);
+		double zx = y * Math.sin(ax) + zy * Math.cos(ax);
+		double distance = - (zx + translateZ);
+		if (distance <= r) {
+			return 0;
+		}
+		double pixels = r / (distance * Math.tan(Math.toRadians(FOVY / 2))) * height;
+		int level = 0;
+		while (level < levels - 1 && pixels < FULL_DETAIL / (1 << level)) {
+			level++;
+		}
+		return level;
+	}
+
+	/**
+	 * Method for turning a point of the canvas into a ray through the scene, in the
+	 * coordinates of the structures
+	 * 
+	 * @param x Horizontal position in pixels from the left
+	 * @param y Vertical position in pixels from the top
+	 * @param w Width of the canvas in pixels
+	 * @param h Height of the canvas in pixels
+	 * 
+	 * @return Returns the origin and the direction of the ray, three values each
+	 */
+	double[] pickRay(int x, int y, int w, int h) {
+		//through the centre of the pixel, in eye coordinates
+		double t = Math.tan(Math.toRadians(FOVY / 2));
+		double dx = (2 * (x + 0.5) / w - 1) * t * w / h;
+		double dy = (1 - 2 * (y + 0.5) / h) * t;
+		double[] o = unrotate(- translateX, - translateY, - translateZ);
+		double[] d = unrotate(dx, dy, -1);
+		//the structures are drawn at a tenth of their size
+		return new double[] {o[0] * 10.0, o[1] * 10.0, o[2] * 10.0, d[0], d[1], d[2]};
+	}
+
+	//undoes the rotations of renderTriangles, the one about the x-axis first
+	private double[] unrotate(double x, double y, double z) {
+		double ax = Math.toRadians(rotateX);
+		double ay = Math.toRadians(rotateY);
+		double yx = y * Math.cos(ax) + z * Math.sin(ax);
+		double zx = - y * Math.sin(ax) + z * Math.cos(ax);
+		return new double[] {x * Math.cos(ay) - zx * Math.sin(ay), yx, 
+				x * Math.sin(ay) + zx * Math.cos(ay)};
+	}
+
 	/**
 	 * Method for setting a new list of renderable structures
 	 * 
-	 * @param triangles List with renderable triangulated structures
+	 * @param surfaces List with renderable structures
 	 */
-	public void setTriangles(ArrayList<ArrayList<Triangle3D>> triangles) {
-		this.triangles = triangles;
+	public void setSurfaces(ArrayList<Surface3D> surfaces) {
+		this.surfaces = surfaces;
 	}
 
 	/**
@@ -320,13 +399,14 @@ MouseWheelListener {
 			int arg4) {
 		GL2 gl = arg0.getGL().getGL2();  // get the OpenGL 2 graphics context
 		arg4 = (arg4 == 0) ? 1 : arg4;// prevent divide by zero
+		height = arg4;
 		float aspect = (float) arg3 / arg4;
 		// Set the view port (display area) to cover the entire window
 		gl.glViewport(0, 0, arg3, arg4);
 		// Setup perspective projection, with aspect ratio matches viewport
 		gl.glMatrixMode(GL2.GL_PROJECTION);  // choose projection matrix
 		gl.glLoadIdentity();             // reset projection matrix
-		glu.gluPerspective(45.0, aspect, 0.1, 100.0); // fovy, aspect, zNear, zFar
+		glu.gluPerspective(FOVY, aspect, 0.1, 100.0); // fovy, aspect, zNear, zFar
 		// Enable the model-view transform
 		gl.glMatrixMode(GL2.GL_MODELVIEW);
 		gl.glLoadIdentity(); // reset
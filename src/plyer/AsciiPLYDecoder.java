@@ -0,0 +1,273 @@
+package plyer;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+
+/**
+ * Decodes the body of an ASCII PLY file by scanning the bytes of a (memory mapped)
+ * buffer and parsing numbers in place. Properties are read in the order the header
+ * declares them, so extra vertex properties (normals, colours, confidence...) are
+ * skipped without being converted. Every record is assumed to end with a line break.
+ */
+class AsciiPLYDecoder extends PLYDecoder {
+	private static final double[] POW10 = {
+		1e0, 1e1, 1e2, 1e3, 1e4, 1e5, 1e6, 1e7, 1e8, 1e9, 1e10,
+		1e11, 1e12, 1e13, 1e14, 1e15, 1e16, 1e17, 1e18, 1e19, 1e20, 1e21, 1e22
+	};
+
+	private ByteBuffer 	buf;
+	private int 		pos;
+	private int 		limit;
+
+	@Override
+	void decode(ByteBuffer buf, PLYHeader h, double magnFactor) throws IOException {
+		this.buf = buf;
+		this.pos = h.dataOffset;
+		this.limit = buf.limit();
+		for (PLYHeader.Element e : h.elements) {
+			if (e.name.equals("vertex")) {
+				decodeVertices(e, magnFactor);
+			} else if (e.name.equals("face")) {
+				decodeFaces(e);
+			} else {
+				for (int r = 0; r < e.count; r++) {
+					nextLine();
+				}
+			}
+		}
+	}
+
+	/**
+	 * Positions the scanner on a region of the buffer, so that records can be read
+	 * one by one with {@link #readVertex} and {@link #readFace}.
+	 * @param buf buffer holding the file.
+	 * @param from position of the first record.
+	 * @param to position after the last record.
+	 * @param vertexCount number of vertices face indices are checked against.
+	 */
+	void reset(ByteBuffer buf, int from, int to, int vertexCount) {
+		this.buf = buf;
+		this.pos = from;
+		this.limit = to;
+		this.vertexCount = vertexCount;
+	}
+
+	private void decodeVertices(PLYHeader.Element e, double magnFactor) throws IOException {
+		int n = e.count;
+		vertices = new double[3 * n];
+		vertexCount = n;
+		int[] roles = coordinateRoles(e);
+		for (int v = 0; v < n; v++) {
+			readVertex(e, roles, magnFactor, vertices, 3 * v);
+		}
+	}
+
+	/**
+	 * Reads one vertex record at the current position and stores its coordinates.
+	 * @param e the vertex element.
+	 * @param roles coordinate of every property, see {@link PLYDecoder#coordinateRoles}.
+	 * @param magnFactor factor every coordinate is multiplied with.
+	 * @param out array receiving the coordinates.
+	 * @param off offset of the x coordinate in the array.
+	 * @throws IOException if the record is malformed.
+	 */
+	void readVertex(PLYHeader.Element e, int[] roles, double magnFactor, double[] out, int off) throws IOException {
+		for (int i = 0; i < roles.length; i++) {
+			PLYHeader.Property p = e.properties.get(i);
+			if (p.list) {
+				skipTokens(nextInt());
+			} else if (roles[i] >= 0) {
+				out[off + roles[i]] = magnFactor * nextDouble();
+			} else {
+				skipTokens(1);
+			}
+		}
+		nextLine();
+	}
+
+	private void decodeFaces(PLYHeader.Element e) throws IOException {
+		int n = e.count;
+		faces = new int[3 * n];
+		faceCount = 0;
+		int listInd = indexListOf(e);
+		for (int f = 0; f < n; f++) {
+			if (readFace(e, listInd, faces, 3 * faceCount)) {
+				faceCount++;
+			}
+		}
+	}
+
+	/**
+	 * Reads one face record at the current position.
+	 * @param e the face element.
+	 * @param listInd position of the vertex index list.
+	 * @param out array receiving the three indices.
+	 * @param off offset of the first index in the array.
+	 * @return true if the face is a triangle and has been stored.
+	 * @throws IOException if the record is malformed.
+	 */
+	boolean readFace(PLYHeader.Element e, int listInd, int[] out, int off) throws IOException {
+		boolean triangle = false;
+		for (int i = 0; i < e.properties.size(); i++) {
+			PLYHeader.Property p = e.properties.get(i);
+			if (p.list) {
+				int cnt = nextInt();
+				if (i == listInd && cnt == 3) {
+					out[off] = checkIndex(nextInt());
+					out[off + 1] = checkIndex(nextInt());
+					out[off + 2] = checkIndex(nextInt());
+					triangle = true;
+				} else {
+					skipTokens(cnt);
+				}
+			} else {
+				skipTokens(1);
+			}
+		}
+		nextLine();
+		return triangle;
+	}
+
+	private void skipBlanks() throws IOException {
+		while (pos < limit) {
+			byte b = buf.get(pos);
+			if (b != ' ' && b != '\t' && b != '\r') {
+				if (b == '\n') {
+					throw new IOException("PLY record ends early at byte " + pos);
+				}
+				return;
+			}
+			pos++;
+		}
+		throw new IOException("PLY body is shorter than declared in the header");
+	}
+
+	private void skipTokens(int n) throws IOException {
+		for (int i = 0; i < n; i++) {
+			skipBlanks();
+			while (pos < limit && buf.get(pos) > ' ') {
+				pos++;
+			}
+		}
+	}
+
+	private void nextLine() {
+		while (pos < limit && buf.get(pos++) != '\n') {
+		}
+	}
+
+	private int nextInt() throws IOException {
+		skipBlanks();
+		boolean negative = false;
+		byte b = buf.get(pos);
+		if (b == '-' || b == '+') {
+			negative = b == '-';
+			pos++;
+		}
+		int start = pos;
+		int val = 0;
+		while (pos < limit && (b = buf.get(pos)) >= '0' && b <= '9') {
+			val = 10 * val + (b - '0');
+			pos++;
+		}
+		if (pos == start || (pos < limit && buf.get(pos) > ' ')) {
+			throw new IOException("Malformed integer at byte " + start);
+		}
+		return negative ? -val : val;
+	}
+
+	/**
+	 * Parses a decimal number in place. Numbers with at most 15 significant digits and a
+	 * small exponent are converted exactly with a single multiplication or division by
+	 * a power of ten, anything else falls back to Double.parseDouble, so the result is
+	 * always the correctly rounded value.
+	 */
+	private double nextDouble() throws IOException {
+		skipBlanks();
+		int start = pos;
+		boolean negative = false;
+		byte b = buf.get(pos);
+		if (b == '-' || b == '+') {
+			negative = b == '-';
+			pos++;
+		}
+		long mantissa = 0;
+		int digits = 0;
+		int exp = 0;
+		boolean any = false;
+		while (pos < limit && (b = buf.get(pos)) >= '0' && b <= '9') {
+			if (digits < 18) {
+				mantissa = 10 * mantissa + (b - '0');
+				if (mantissa != 0) {
+					digits++;
+				}
+			} else {
+				digits++;
+				exp++;
+			}
+			any = true;
+			pos++;
+		}
+		if (pos < limit && buf.get(pos) == '.') {
+			pos++;
+			while (pos < limit && (b = buf.get(pos)) >= '0' && b <= '9') {
+				if (digits < 18) {
+					mantissa = 10 * mantissa + (b - '0');
+					if (mantissa != 0) {
+						digits++;
+					}
+					exp--;
+				} else {
+					digits++;
+				}
+				any = true;
+				pos++;
+			}
+		}
+		if (any && pos < limit && ((b = buf.get(pos)) == 'e' || b == 'E')) {
+			pos++;
+			boolean expNegative = false;
+			if (pos < limit && ((b = buf.get(pos)) == '-' || b == '+')) {
+				expNegative = b == '-';
+				pos++;
+			}
+			int e = 0;
+			int expStart = pos;
+			while (pos < limit && (b = buf.get(pos)) >= '0' && b <= '9') {
+				if (e < 100000) {
+					e = 10 * e + (b - '0');
+				}
+				pos++;
+			}
+			if (pos == expStart) {
+				any = false;
+			}
+			exp += expNegative ? -e : e;
+		}
+		if (!any || (pos < limit && buf.get(pos) > ' ')) {
+			//not a plain decimal (nan, inf, hex...): let the JDK decide
+			while (pos < limit && buf.get(pos) > ' ') {
+				pos++;
+			}
+			return slowParse(start, pos);
+		}
+
+		if (digits > 15 || exp < -22 || exp > 22) {
+			return slowParse(start, pos);
+		}
+		double val = exp < 0 ? mantissa / POW10[-exp] : mantissa * POW10[exp];
+		return negative ? -val : val;
+	}
+
+	private double slowParse(int from, int to) throws IOException {
+		char[] chars = new char[to - from];
+		for (int i = 0; i < chars.length; i++) {
+			chars[i] = (char) buf.get(from + i);
+		}
+		try {
+			return Double.parseDouble(new String(chars));
+		} catch (NumberFormatException ex) {
+			throw new IOException("Malformed number at byte " + from);
+		}
+	}
+}
@@ -0,0 +1,137 @@
+package plyer;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+
+/**
+ * Decodes the body of a binary_little_endian or binary_big_endian PLY file straight
+ * from a (memory mapped) buffer. The property layout declared in the header is compiled
+ * once per element into offsets and types, so no per-record parsing of the header is done.
+ */
+class BinaryPLYDecoder extends PLYDecoder {
+
+	@Override
+	void decode(ByteBuffer buf, PLYHeader h, double magnFactor) throws IOException {
+		buf.order(h.format.equals(PLYHeader.BINARY_LE) ? ByteOrder.LITTLE_ENDIAN : ByteOrder.BIG_ENDIAN);
+		int pos = h.dataOffset;
+		for (PLYHeader.Element e : h.elements) {
+			if (e.name.equals("vertex")) {
+				pos = decodeVertices(buf, pos, e, magnFactor);
+			} else if (e.name.equals("face")) {
+				pos = decodeFaces(buf, pos, e);
+			} else {
+				pos = skip(buf, pos, e);
+			}
+		}
+	}
+
+	private int decodeVertices(ByteBuffer buf, int pos, PLYHeader.Element e, double magnFactor) throws IOException {
+		int n = e.count;
+		int[] roles = coordinateRoles(e);
+		vertices = new double[3 * n];
+		vertexCount = n;
+
+		int stride = e.stride();
+		if (stride > 0) {
+			//fixed size records: every coordinate sits at a constant offset
+			int[] offsets = new int[3];
+			int[] types = new int[3];
+			int off = 0;
+			for (int i = 0; i < roles.length; i++) {
+				PLYHeader.Property p = e.properties.get(i);
+				if (roles[i] >= 0) {
+					offsets[roles[i]] = off;
+					types[roles[i]] = p.type;
+				}
+				off += PLYHeader.sizeOf(p.type);
+			}
+			checkRemaining(buf, pos, (long) stride * n);
+			for (int v = 0, k = 0; v < n; v++, pos += stride) {
+				vertices[k++] = magnFactor * PLYHeader.read(buf, pos + offsets[0], types[0]);
+				vertices[k++] = magnFactor * PLYHeader.read(buf, pos + offsets[1], types[1]);
+				vertices[k++] = magnFactor * PLYHeader.read(buf, pos + offsets[2], types[2]);
+			}
+			return pos;
+		}
+
+		for (int v = 0; v < n; v++) {
+			for (int i = 0; i < roles.length; i++) {
+				PLYHeader.Property p = e.properties.get(i);
+				if (p.list) {
+					int cnt = PLYHeader.readInt(buf, pos, p.countType);
+					pos += PLYHeader.sizeOf(p.countType) + cnt * PLYHeader.sizeOf(p.type);
+				} else {
+					if (roles[i] >= 0) {
+						vertices[3 * v + roles[i]] = magnFactor * PLYHeader.read(buf, pos, p.type);
+					}
+					pos += PLYHeader.sizeOf(p.type);
+				}
+			}
+		}
+		return pos;
+	}
+
+	private int decodeFaces(ByteBuffer buf, int pos, PLYHeader.Element e) throws IOException {
+		int n = e.count;
+		int listInd = indexListOf(e);
+		faces = new int[3 * n];
+		faceCount = 0;
+
+		PLYHeader.Property list = e.properties.get(listInd);
+		int cType = list.countType;
+		int cSize = PLYHeader.sizeOf(cType);
+		int iType = list.type;
+		int iSize = PLYHeader.sizeOf(iType);
+		int props = e.properties.size();
+
+		for (int f = 0; f < n; f++) {
+			for (int i = 0; i < props; i++) {
+				PLYHeader.Property p = e.properties.get(i);
+				if (i == listInd) {
+					int cnt = PLYHeader.readInt(buf, pos, cType);
+					pos += cSize;
+					if (cnt == 3) {
+						int k = 3 * faceCount;
+						faces[k] = checkIndex(PLYHeader.readInt(buf, pos, iType));
+						faces[k + 1] = checkIndex(PLYHeader.readInt(buf, pos + iSize, iType));
+						faces[k + 2] = checkIndex(PLYHeader.readInt(buf, pos + 2 * iSize, iType));
+						faceCount++;
+					}
+					pos += cnt * iSize;
+				} else if (p.list) {
+					int cnt = PLYHeader.readInt(buf, pos, p.countType);
+					pos += PLYHeader.sizeOf(p.countType) + cnt * PLYHeader.sizeOf(p.type);
+				} else {
+					pos += PLYHeader.sizeOf(p.type);
+				}
+			}
+		}
+		return pos;
+	}
+
+	private int skip(ByteBuffer buf, int pos, PLYHeader.Element e) throws IOException {
+		int stride = e.stride();
+		if (stride >= 0) {
+			checkRemaining(buf, pos, (long) stride * e.count);
+			return pos + stride * e.count;
+		}
+		for (int r = 0; r < e.count; r++) {
+			for (PLYHeader.Property p : e.properties) {
+				if (p.list) {
+					int cnt = PLYHeader.readInt(buf, pos, p.countType);
+					pos += PLYHeader.sizeOf(p.countType) + cnt * PLYHeader.sizeOf(p.type);
+				} else {
+					pos += PLYHeader.sizeOf(p.type);
+				}
+			}
+		}
+		return pos;
+	}
+
+	private static void checkRemaining(ByteBuffer buf, int pos, long bytes) throws IOException {
+		if (pos + bytes > buf.limit()) {
+			throw new IOException("PLY body is shorter than declared in the header");
+		}
+	}
+}
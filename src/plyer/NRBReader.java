@@ -2,7 +2,7 @@ package plyer;
 
 import java.io.BufferedReader;
 import java.io.FileReader;
-import java.util.ArrayList;
+import java.util.Arrays;
 
 import surfaces.*;
 
@@ -29,9 +29,12 @@ public class NRBReader {
      public NURBS getNURBS(String filename) {
           int degreeU = 0;
           int degreeV = 0;
-          ArrayList<Double> knotsU = new ArrayList<>();
-          ArrayList<Double> knotsV = new ArrayList<>();
-          ArrayList<ArrayList<WPoint3D>> controlNet = new ArrayList<>();
+          double[] knotsU = new double[0];
+          double[] knotsV = new double[0];
+          double[] points = new double[64];
+          int size = 0;
+          int nU = 0;
+          int nV = 0;
 
           try {
                BufferedReader br = new BufferedReader(new FileReader(filename));
@@ -45,32 +48,32 @@ public class NRBReader {
                          degreeV = Integer.parseInt(split[1]);
                     }
                }
-               line = br.readLine();
-               String[] split = line.split(" ");
-               for (String i : split)
-                    knotsU.add(Double.parseDouble(i));
-               line = br.readLine();
-               split = line.split(" ");
-               for (String i : split)
-                    knotsV.add(Double.parseDouble(i));
+               knotsU = parseKnots(br.readLine());
+               knotsV = parseKnots(br.readLine());
 
                while (!(line = br.readLine()).equals("end_file")) {
-                    ArrayList<WPoint3D> pList = new ArrayList<>();
-                    split = line.split("x");
+                    String[] split = line.split("x");
                     for (String i : split) {
                          String[] j = i.split(" ");
-                         pList.add(new WPoint3D(         Double.parseDouble(j[0]),
-                                                         Double.parseDouble(j[1]),
-                                                         Double.parseDouble(j[2]),
-                                                         Double.parseDouble(j[3])));
+                         if (size + 4 > points.length)
+                              points = Arrays.copyOf(points, 2 * points.length);
+                         for (int k = 0; k < 4; k++)
+                              points[size++] = Double.parseDouble(j[k]);
                     }
-                    for (WPoint3D i : pList)
-                         System.out.println(i.toString());
-                    controlNet.add(pList);
+                    nV = split.length;
+                    nU++;
                }
                br.close();
           } catch (Exception e) {
           }
-          return new NURBS(degreeU,degreeV,controlNet,knotsU,knotsV);
+          return new NURBS(degreeU, degreeV, nU, nV, points, knotsU, knotsV);
+     }
+
+     private double[] parseKnots(String line) {
+          String[] split = line.split(" ");
+          double[] knots = new double[split.length];
+          for (int i = 0; i < split.length; i++)
+               knots[i] = Double.parseDouble(split[i]);
+          return knots;
      }
 }
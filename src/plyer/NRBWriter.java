@@ -3,7 +3,6 @@ package plyer;
 import java.io.BufferedWriter;
 import java.io.FileWriter;
 import java.io.IOException;
-import java.util.ArrayList;
 
 import surfaces.*;
 
@@ -20,26 +19,27 @@ public class NRBWriter {
           try {
                int degreeU = nurbs.getDegreeU();
                int degreeV = nurbs.getDegreeV();
-               ArrayList<Double> knotsU = nurbs.getKnotsU();
-               ArrayList<Double> knotsV = nurbs.getKnotsV();
-               ArrayList<ArrayList<WPoint3D>> controlNet = nurbs.getControlNet();
+               double[] knotsU = nurbs.getKnotVectorU();
+               double[] knotsV = nurbs.getKnotVectorV();
+               double[] p = new double[4];
                BufferedWriter writer = new BufferedWriter(new FileWriter(filename + ".nrb"));
                writer.write("nurbs" + System.lineSeparator()
                                       + "degreeU " + degreeU + System.lineSeparator()
                                       + "degreeV " + degreeV + System.lineSeparator()
                                       + "end_header");
                writer.newLine();
-               for (Double i : knotsU) {
+               for (double i : knotsU) {
                     writer.write(i + " ");
                }
                writer.newLine();
-               for (Double i : knotsV) {
+               for (double i : knotsV) {
                     writer.write(i + " ");
                }
                writer.newLine();
-               for (ArrayList<WPoint3D> i : controlNet) {
-                    for (WPoint3D j : i) {
-                         writer.write(j.getX() + " " + j.getY() + " " + j.getZ() + " " + j.getWeight() + "x");
+               for (int i = 0; i < nurbs.getnU(); i++) {
+                    for (int j = 0; j < nurbs.getnV(); j++) {
+                         nurbs.getControlPoint(i, j, p);
+                         writer.write(p[0] + " " + p[1] + " " + p[2] + " " + p[3] + "x");
                     }
                     writer.newLine();
                }
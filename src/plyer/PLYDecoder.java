@@ -0,0 +1,72 @@
+package plyer;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+
+/**
+ * Base class for decoders of a PLY body. A decoder fills primitive arrays with the
+ * vertex coordinates and the triangle indices, which PLYReader turns into a mesh.
+ */
+abstract class PLYDecoder {
+	double[] 	vertices 	= new double[0];
+	int 		vertexCount;
+	int[] 		faces 		= new int[0];
+	int 		faceCount;
+
+	/**
+	 * Decodes all elements of the body. Vertex coordinates end up in {@link #vertices}
+	 * as consecutive x, y, z triples and triangles in {@link #faces} as index triples.
+	 * Faces that are not triangles are skipped.
+	 * @param buf buffer holding the complete file.
+	 * @param h the parsed header.
+	 * @param magnFactor factor every coordinate is multiplied with.
+	 * @throws IOException if the body does not match the header.
+	 */
+	abstract void decode(ByteBuffer buf, PLYHeader h, double magnFactor) throws IOException;
+
+	/**
+	 * Returns the positions of the x, y and z properties of the vertex element.
+	 * @param e the vertex element.
+	 * @return array mapping every property to its coordinate (0, 1, 2) or -1.
+	 * @throws IOException if a coordinate is not declared.
+	 */
+	static int[] coordinateRoles(PLYHeader.Element e) throws IOException {
+		int[] roles = new int[e.properties.size()];
+		for (int i = 0; i < roles.length; i++) {
+			roles[i] = -1;
+		}
+		String[] names = {"x", "y", "z"};
+		for (int c = 0; c < 3; c++) {
+			int ind = e.indexOf(names[c]);
+			if (ind < 0) {
+				throw new IOException("Vertex element has no property " + names[c]);
+			}
+			roles[ind] = c;
+		}
+		return roles;
+	}
+
+	/**
+	 * Returns the position of the vertex index list of the face element.
+	 * @param e the face element.
+	 * @return the index of the list property.
+	 * @throws IOException if there is no such list.
+	 */
+	static int indexListOf(PLYHeader.Element e) throws IOException {
+		int listInd = e.indexOf("vertex_indices");
+		if (listInd < 0) {
+			listInd = e.indexOf("vertex_index");
+		}
+		if (listInd < 0 || !e.properties.get(listInd).list) {
+			throw new IOException("Face element has no vertex index list");
+		}
+		return listInd;
+	}
+
+	int checkIndex(int i) throws IOException {
+		if (i < 0 || i >= vertexCount) {
+			throw new IOException("Face refers to vertex " + i + " of " + vertexCount);
+		}
+		return i;
+	}
+}
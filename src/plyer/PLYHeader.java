@@ -0,0 +1,248 @@
+package plyer;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+
+/**
+ * Parsed header of a PLY file: the body format, the declared elements with
+ * their properties and the byte offset at which the body starts.
+ */
+class PLYHeader {
+	static final String ASCII 			= "ascii";
+	static final String BINARY_LE 		= "binary_little_endian";
+	static final String BINARY_BE 		= "binary_big_endian";
+
+	static final int CHAR 				= 0;
+	static final int UCHAR 				= 1;
+	static final int SHORT 				= 2;
+	static final int USHORT 			= 3;
+	static final int INT 				= 4;
+	static final int UINT 				= 5;
+	static final int FLOAT 				= 6;
+	static final int DOUBLE 			= 7;
+
+	private static final int[] SIZES 	= {1, 1, 2, 2, 4, 4, 4, 8};
+
+	String 				format;
+	int 				dataOffset;
+	ArrayList<Element> 	elements = new ArrayList<>();
+
+	/**
+	 * A declared element ("element vertex 35947") with its properties in file order.
+	 */
+	static class Element {
+		String 					name;
+		int 					count;
+		ArrayList<Property> 	properties = new ArrayList<>();
+
+		/**
+		 * Returns the size in bytes of one binary record, or -1 if the element has list properties.
+		 * @return the record size.
+		 */
+		int stride() {
+			int stride = 0;
+			for (Property p : properties) {
+				if (p.list) {
+					return -1;
+				}
+				stride += sizeOf(p.type);
+			}
+			return stride;
+		}
+
+		/**
+		 * Returns the position of the property with the given name.
+		 * @param name the property name.
+		 * @return the index of the property, or -1 if it is not declared.
+		 */
+		int indexOf(String name) {
+			for (int i = 0; i < properties.size(); i++) {
+				if (properties.get(i).name.equals(name)) {
+					return i;
+				}
+			}
+			return -1;
+		}
+	}
+
+	/**
+	 * A declared scalar or list property of an element.
+	 */
+	static class Property {
+		String 	name;
+		int 	type;
+		int 	countType;
+		boolean list;
+	}
+
+	/**
+	 * Returns the element with the given name.
+	 * @param name the element name.
+	 * @return the element, or null if it is not declared.
+	 */
+	Element element(String name) {
+		for (Element e : elements) {
+			if (e.name.equals(name)) {
+				return e;
+			}
+		}
+		return null;
+	}
+
+	/**
+	 * Parses the header at the start of the buffer. The buffer position is left untouched.
+	 * @param buf buffer holding the file contents.
+	 * @return the parsed header.
+	 * @throws IOException if the header is malformed.
+	 */
+	static PLYHeader parse(ByteBuffer buf) throws IOException {
+		PLYHeader h = new PLYHeader();
+		StringBuilder sb = new StringBuilder();
+		int pos = 0;
+		int limit = buf.limit();
+		Element current = null;
+		while (pos < limit) {
+			byte b = buf.get(pos++);
+			if (b != '\n') {
+				if (b != '\r') {
+					sb.append((char) b);
+				}
+				continue;
+			}
+			String line = sb.toString().trim();
+			sb.setLength(0);
+			String[] split = line.split("\\s+");
+			if (split[0].equals("end_header")) {
+				h.dataOffset = pos;
+				if (h.format == null) {
+					throw new IOException("PLY header declares no format");
+				}
+				return h;
+			} else if (split[0].equals("format")) {
+				h.format = split[1];
+			} else if (split[0].equals("element")) {
+				current = new Element();
+				current.name = split[1];
+				current.count = Integer.parseInt(split[2]);
+				h.elements.add(current);
+			} else if (split[0].equals("property") && current != null) {
+				Property p = new Property();
+				if (split[1].equals("list")) {
+					p.list = true;
+					p.countType = typeOf(split[2]);
+					p.type = typeOf(split[3]);
+					p.name = split[4];
+				} else {
+					p.type = typeOf(split[1]);
+					p.name = split[2];
+				}
+				current.properties.add(p);
+			}
+		}
+		throw new IOException("PLY header is not terminated by end_header");
+	}
+
+	/**
+	 * Maps a PLY type name to its type code. Both the classic and the sized names are accepted,
+	 * as well as "double64" which older versions of PLYWriter emitted.
+	 * @param name the type name.
+	 * @return the type code.
+	 * @throws IOException if the type is unknown.
+	 */
+	static int typeOf(String name) throws IOException {
+		switch (name) {
+		case "char":
+		case "int8":
+			return CHAR;
+		case "uchar":
+		case "uint8":
+			return UCHAR;
+		case "short":
+		case "int16":
+			return SHORT;
+		case "ushort":
+		case "uint16":
+			return USHORT;
+		case "int":
+		case "int32":
+			return INT;
+		case "uint":
+		case "uint32":
+			return UINT;
+		case "float":
+		case "float32":
+			return FLOAT;
+		case "double":
+		case "float64":
+		case "double64":
+			return DOUBLE;
+		default:
+			throw new IOException("Unknown PLY type " + name);
+		}
+	}
+
+	/**
+	 * Returns the size in bytes of a binary value of the given type.
+	 * @param type the type code.
+	 * @return the size in bytes.
+	 */
+	static int sizeOf(int type) {
+		return SIZES[type];
+	}
+
+	/**
+	 * Reads a binary value of the given type at an absolute position.
+	 * @param buf buffer with the byte order of the file.
+	 * @param pos absolute position of the value.
+	 * @param type the type code.
+	 * @return the value.
+	 */
+	static double read(ByteBuffer buf, int pos, int type) {
+		switch (type) {
+		case CHAR:
+			return buf.get(pos);
+		case UCHAR:
+			return buf.get(pos) & 0xFF;
+		case SHORT:
+			return buf.getShort(pos);
+		case USHORT:
+			return buf.getShort(pos) & 0xFFFF;
+		case INT:
+			return buf.getInt(pos);
+		case UINT:
+			return buf.getInt(pos) & 0xFFFFFFFFL;
+		case FLOAT:
+			return buf.getFloat(pos);
+		default:
+			return buf.getDouble(pos);
+		}
+	}
+
+	/**
+	 * Reads a binary integer value of the given type at an absolute position.
+	 * @param buf buffer with the byte order of the file.
+	 * @param pos absolute position of the value.
+	 * @param type the type code.
+	 * @return the value.
+	 */
+	static int readInt(ByteBuffer buf, int pos, int type) {
+		switch (type) {
+		case CHAR:
+			return buf.get(pos);
+		case UCHAR:
+			return buf.get(pos) & 0xFF;
+		case SHORT:
+			return buf.getShort(pos);
+		case USHORT:
+			return buf.getShort(pos) & 0xFFFF;
+		case INT:
+		case UINT:
+			return buf.getInt(pos);
+		case FLOAT:
+			return (int) buf.getFloat(pos);
+		default:
+			return (int) buf.getDouble(pos);
+		}
+	}
+}
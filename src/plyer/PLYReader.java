@@ -1,18 +1,22 @@
 package plyer;
 
-import java.io.BufferedReader;
-import java.io.FileReader;
-import java.util.ArrayList;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
 
 import surfaces.FVPolygonMesh;
-import surfaces.Point3D;
-import surfaces.Triangle3D;
+import surfaces.IndexedMesh;
 
 /**
  * Reads PLY files and uses the found values to create a new Face-Vertex polygon Mesh.
+ * ASCII as well as binary (little and big endian) files are supported.
  */
 public class PLYReader {
-	private double magnFactor;
+	private static final int PARALLEL_THRESHOLD = 1 << 22;
+	
+	private double 	magnFactor;
+	private boolean parallel = true;
 	
 	/**
 	 * Creates a new PLYReader object with a certain magnifying value.
@@ -22,61 +26,49 @@ public class PLYReader {
 		this.magnFactor = magnFactor;
 	}
 	
+	/**
+	 * Enables or disables parallel loading. When enabled, ASCII files of more than
+	 * a few megabytes are parsed in chunks on all cores; the resulting mesh is the
+	 * same as with sequential loading.
+	 * @param parallel true to allow parallel loading.
+	 */
+	public void setParallel(boolean parallel) {
+		this.parallel = parallel;
+	}
+	
 	/**
 	 * Reads the inputted file and creates a FVPolygonMesh with the elements.
+	 * The file is decoded directly from a memory mapped buffer, so it is
+	 * limited to 2 GB.
 	 * @param filename The File to be read
 	 * @return the constructed FVPolygonMesh.
 	 */
 	public FVPolygonMesh getFVMesh(String filename) {
-		ArrayList<Point3D> vertices = new ArrayList<>();
-		ArrayList<Triangle3D> faces = new ArrayList<>();
-		ArrayList<ArrayList<Triangle3D>> verticesToFaces = new ArrayList<ArrayList<Triangle3D>>();
+		MappedByteBuffer buf = null;
+		PLYHeader header = null;
+		try (FileChannel ch = FileChannel.open(Paths.get(filename), StandardOpenOption.READ)) {
+			buf = ch.map(FileChannel.MapMode.READ_ONLY, 0, ch.size());
+			header = PLYHeader.parse(buf);
+		} catch (Exception e) {
+		}
 		
+		if (header == null) {
+			return new FVPolygonMesh();
+		}
+		PLYDecoder decoder;
+		if (parallel && buf.limit() - header.dataOffset > PARALLEL_THRESHOLD 
+				&& ParallelAsciiPLYDecoder.supports(header)) {
+			decoder = new ParallelAsciiPLYDecoder();
+		} else if (header.format.equals(PLYHeader.ASCII)) {
+			decoder = new AsciiPLYDecoder();
+		} else {
+			decoder = new BinaryPLYDecoder();
+		}
 		try {
-			BufferedReader br = new BufferedReader(new FileReader(filename));
-			String line;
-			int vNum = 0;
-			int fNum = 0;
-			while (!(line = br.readLine()).equals("end_header")) {
-				//System.out.println(line);
-				if (line.contains("element vertex")) {
-					String[] split = line.split(" ");
-					vNum = Integer.parseInt(split[2]);
-				}
-				else if (line.contains("element face")) {
-					String[] split = line.split(" ");
-					fNum = Integer.parseInt(split[2]);
-				}
-			}
-			int cnt = 0;
-			while (cnt < vNum) {
-				line = br.readLine();
-				cnt++;
-				String[] split = line.split(" ");
-				vertices.add(new Point3D(magnFactor * Double.parseDouble(split[0]), magnFactor * Double.parseDouble(split[1]),
-						magnFactor * Double.parseDouble(split[2])));
-				verticesToFaces.add(new ArrayList<Triangle3D>());
-			}
-			
-			cnt = 0;
-			while (cnt < fNum) {
-				line = br.readLine();
-				cnt++;
-				String[] split = line.split(" ");
-				if (Integer.parseInt(split[0]) == 3) {
-					Point3D p1 = vertices.get(Integer.parseInt(split[1]));
-					Point3D p2 = vertices.get(Integer.parseInt(split[2]));
-					Point3D p3 = vertices.get(Integer.parseInt(split[3]));
-					Triangle3D f = new Triangle3D(p1, p2, p3);
-					faces.add(f);
-					verticesToFaces.get(Integer.parseInt(split[1])).add(f);
-					verticesToFaces.get(Integer.parseInt(split[2])).add(f);
-					verticesToFaces.get(Integer.parseInt(split[3])).add(f);
-				}
-			}
-			br.close();
+			decoder.decode(buf, header, magnFactor);
 		} catch (Exception e) {
+			return new FVPolygonMesh();
 		}
-		return new FVPolygonMesh(vertices, faces, verticesToFaces);
+		return new FVPolygonMesh(new IndexedMesh(decoder.vertices, decoder.vertexCount, decoder.faces, decoder.faceCount));
 	}
 }
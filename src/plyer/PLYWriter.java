@@ -1,68 +1,156 @@
 package plyer;
 
 import java.io.BufferedWriter;
-import java.io.FileWriter;
 import java.io.IOException;
-import java.util.ArrayList;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
 
 import surfaces.FVPolygonMesh;
-import surfaces.Point3D;
-import surfaces.Triangle3D;
+import surfaces.IndexedMesh;
 
 /**
- * Creates new PLY files using the inputted FVPolygonMesh.
+ * Creates new PLY files using the inputted FVPolygonMesh, either as ASCII
+ * or as binary_little_endian.
  */
 public class PLYWriter {
+	public static final String ASCII 					= "ascii";
+	public static final String BINARY_LITTLE_ENDIAN 	= "binary_little_endian";
+	
+	private static final int BUFFER_SIZE 				= 1 << 16;
+	private static final int BINARY_BUFFER_SIZE 		= 1 << 20;
+	
+	private String 	format;
+	private boolean singlePrecision;
+	
+	/**
+	 * Creates a writer producing ASCII files with double precision coordinates.
+	 */
+	public PLYWriter() {
+		this(ASCII, false);
+	}
+	
+	/**
+	 * Creates a writer producing files of the given format.
+	 * @param format Either {@link #ASCII} or {@link #BINARY_LITTLE_ENDIAN}.
+	 * @param singlePrecision True to store coordinates as float32 instead of float64.
+	 * @throws IllegalArgumentException If format is not one of the supported formats.
+	 */
+	public PLYWriter(String format, boolean singlePrecision) {
+		if (!ASCII.equals(format) && !BINARY_LITTLE_ENDIAN.equals(format)) {
+			throw new IllegalArgumentException("Unsupported PLY format: " + format);
+		}
+		this.format = format;
+		this.singlePrecision = singlePrecision;
+	}
+	
 	/**
 	 * Creates the PLY file.
 	 * @param filename The name the new file should get.
 	 * @param fvpm The FVPolygonMesh which needs to be in the PLY file.
 	 */
 	public void writeFVMesh(String filename, FVPolygonMesh fvpm) {
-		try {
-			ArrayList<Point3D> vertices = fvpm.vertices();
-			ArrayList<Triangle3D> faces = fvpm.triangulate();
-			BufferedWriter writer = new BufferedWriter(new FileWriter(filename + ".ply"));
-			writer.write("ply" + System.lineSeparator()
-					+ "format ascii 1.0" + System.lineSeparator()
-					+ "element vertex " + vertices.size() + System.lineSeparator()
-					+ "property double64 x" + System.lineSeparator()
-					+ "property double64 y" + System.lineSeparator()
-					+ "property double64 z" + System.lineSeparator()
-					+ "element face " + faces.size() + System.lineSeparator()
-					+ "property list int16 int16 vertex_indices" + System.lineSeparator()
-					+ "end_header");
-			for (Point3D v : vertices) {
-				writer.newLine();
-				writer.write(v.getX() + " " + v.getY() + " " + v.getZ());
-			}
-			
-			for (Triangle3D t : faces) {
-				ArrayList<Point3D> ps = t.vertices();
-				Point3D p1 = ps.get(0);
-				Point3D p2 = ps.get(1);
-				Point3D p3 = ps.get(2);
-				int i1 = 0;
-				int i2 = 0;
-				int i3 = 0;
-				for (int i = 0; i < vertices.size(); i++) {
-					if (p1.equals(vertices.get(i))) {
-						i1 = i;
-					}
-					else if (p2.equals(vertices.get(i))) {
-						i2 = i;
-					}
-					else if (p3.equals(vertices.get(i))) {
-						i3 = i;
-					}
-				}
-				writer.newLine();
-				writer.write("3 " + i1 + " " + i2 + " " + i3);
+		try (FileChannel ch = FileChannel.open(Paths.get(filename + ".ply"), StandardOpenOption.CREATE,
+				StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+			IndexedMesh mesh = fvpm.toIndexedMesh();
+			if (format.equals(BINARY_LITTLE_ENDIAN)) {
+				writeBinary(ch, mesh);
+			} else {
+				writeAscii(ch, mesh);
 			}
-			writer.close();
 		} catch (IOException e) {
 			e.printStackTrace();
 		}
+	}
+	
+	private String header(int vNum, int fNum, String lineSeparator) {
+		String type = singlePrecision ? "float" : "double";
+		return "ply" + lineSeparator
+				+ "format " + format + " 1.0" + lineSeparator
+				+ "element vertex " + vNum + lineSeparator
+				+ "property " + type + " x" + lineSeparator
+				+ "property " + type + " y" + lineSeparator
+				+ "property " + type + " z" + lineSeparator
+				+ "element face " + fNum + lineSeparator
+				+ "property list uchar int vertex_indices" + lineSeparator
+				+ "end_header";
+	}
+	
+	private void writeAscii(FileChannel ch, IndexedMesh mesh) throws IOException {
+		BufferedWriter writer = new BufferedWriter(Channels.newWriter(ch, "US-ASCII"), BUFFER_SIZE);
+		double[] xyz = mesh.coordinates();
+		int[] faces = mesh.triangles();
+		writer.write(header(mesh.vertexCount(), mesh.faceCount(), System.lineSeparator()));
+		for (int i = 0; i < 3 * mesh.vertexCount(); i += 3) {
+			writer.newLine();
+			if (singlePrecision) {
+				writer.write(Float.toString((float) xyz[i]));
+				writer.write(' ');
+				writer.write(Float.toString((float) xyz[i + 1]));
+				writer.write(' ');
+				writer.write(Float.toString((float) xyz[i + 2]));
+			} else {
+				writer.write(Double.toString(xyz[i]));
+				writer.write(' ');
+				writer.write(Double.toString(xyz[i + 1]));
+				writer.write(' ');
+				writer.write(Double.toString(xyz[i + 2]));
+			}
+		}
 		
+		for (int i = 0; i < 3 * mesh.faceCount(); i += 3) {
+			writer.newLine();
+			writer.write("3 ");
+			writer.write(Integer.toString(faces[i]));
+			writer.write(' ');
+			writer.write(Integer.toString(faces[i + 1]));
+			writer.write(' ');
+			writer.write(Integer.toString(faces[i + 2]));
+		}
+		writer.flush();
+	}
+	
+	private void writeBinary(FileChannel ch, IndexedMesh mesh) throws IOException {
+		ByteBuffer buf = ByteBuffer.allocateDirect(BINARY_BUFFER_SIZE).order(ByteOrder.LITTLE_ENDIAN);
+		double[] xyz = mesh.coordinates();
+		int[] faces = mesh.triangles();
+		buf.put((header(mesh.vertexCount(), mesh.faceCount(), "\n") + "\n").getBytes(StandardCharsets.US_ASCII));
+		int vertexSize = singlePrecision ? 12 : 24;
+		for (int i = 0; i < 3 * mesh.vertexCount(); i += 3) {
+			if (buf.remaining() < vertexSize) {
+				drain(ch, buf);
+			}
+			if (singlePrecision) {
+				buf.putFloat((float) xyz[i]);
+				buf.putFloat((float) xyz[i + 1]);
+				buf.putFloat((float) xyz[i + 2]);
+			} else {
+				buf.putDouble(xyz[i]);
+				buf.putDouble(xyz[i + 1]);
+				buf.putDouble(xyz[i + 2]);
+			}
+		}
+		for (int i = 0; i < 3 * mesh.faceCount(); i += 3) {
+			if (buf.remaining() < 13) {
+				drain(ch, buf);
+			}
+			buf.put((byte) 3);
+			buf.putInt(faces[i]);
+			buf.putInt(faces[i + 1]);
+			buf.putInt(faces[i + 2]);
+		}
+		drain(ch, buf);
+	}
+	
+	private static void drain(FileChannel ch, ByteBuffer buf) throws IOException {
+		buf.flip();
+		while (buf.hasRemaining()) {
+			ch.write(buf);
+		}
+		buf.clear();
 	}
 }
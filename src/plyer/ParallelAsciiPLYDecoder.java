@@ -0,0 +1,182 @@
+package plyer;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+/**
+ * Decodes the body of an ASCII PLY file on the common fork-join pool. The body is cut into
+ * newline aligned chunks; a first parallel pass counts the records in every chunk, which
+ * gives each chunk the index of its first record, and a second pass parses the chunks
+ * independently into the shared primitive arrays. Every record is parsed by the same code
+ * as in {@link AsciiPLYDecoder}, so the result is identical to the sequential decoder.
+ * Only bodies consisting of a vertex element followed by a face element are supported.
+ */
+class ParallelAsciiPLYDecoder extends PLYDecoder {
+	private static final int CHUNKS_PER_THREAD 	= 4;
+
+	private ByteBuffer 			buf;
+	private PLYHeader.Element 	vertexElement;
+	private PLYHeader.Element 	faceElement;
+	private int[] 				roles;
+	private int 				listInd;
+	private double 				magnFactor;
+	private int[] 				starts;
+	private int[] 				firstRecord;
+	private int[] 				recordCount;
+	private boolean[] 			triangle;
+
+	/**
+	 * Checks whether the body of a file can be decoded in parallel.
+	 * @param h the parsed header.
+	 * @return true if the file is ASCII and holds vertices followed by faces only.
+	 */
+	static boolean supports(PLYHeader h) {
+		return h.format.equals(PLYHeader.ASCII) && h.elements.size() == 2
+				&& h.elements.get(0).name.equals("vertex") && h.elements.get(1).name.equals("face");
+	}
+
+	@Override
+	void decode(ByteBuffer buf, PLYHeader h, double magnFactor) throws IOException {
+		this.buf = buf;
+		this.magnFactor = magnFactor;
+		vertexElement = h.elements.get(0);
+		faceElement = h.elements.get(1);
+		roles = coordinateRoles(vertexElement);
+		listInd = indexListOf(faceElement);
+		vertexCount = vertexElement.count;
+		vertices = new double[3 * vertexCount];
+		faces = new int[3 * faceElement.count];
+		triangle = new boolean[faceElement.count];
+
+		ForkJoinPool pool = ForkJoinPool.commonPool();
+		int chunks = Math.max(1, CHUNKS_PER_THREAD * pool.getParallelism());
+		starts = splitBody(h.dataOffset, buf.limit(), chunks);
+		chunks = starts.length - 1;
+
+		//first pass: number of records in every chunk
+		recordCount = new int[chunks];
+		try {
+			pool.invoke(new ChunkTask(0, chunks, true));
+		} catch (UncheckedIOException e) {
+			throw e.getCause();
+		}
+		firstRecord = new int[chunks];
+		long total = 0;
+		for (int c = 0; c < chunks; c++) {
+			firstRecord[c] = (int) Math.min(total, Integer.MAX_VALUE);
+			total += recordCount[c];
+		}
+		if (total < (long) vertexCount + faceElement.count) {
+			throw new IOException("PLY body is shorter than declared in the header");
+		}
+
+		//second pass: parse the records of every chunk
+		try {
+			pool.invoke(new ChunkTask(0, chunks, false));
+		} catch (UncheckedIOException e) {
+			throw e.getCause();
+		}
+
+		//drop faces which are not triangles, keeping the file order
+		faceCount = 0;
+		for (int f = 0; f < triangle.length; f++) {
+			if (triangle[f]) {
+				if (faceCount != f) {
+					System.arraycopy(faces, 3 * f, faces, 3 * faceCount, 3);
+				}
+				faceCount++;
+			}
+		}
+	}
+
+	private int[] splitBody(int from, int to, int chunks) {
+		int[] tmp = new int[chunks + 1];
+		int n = 0;
+		tmp[n++] = from;
+		long size = to - from;
+		for (int c = 1; c < chunks; c++) {
+			int p = (int) (from + size * c / chunks);
+			p = Math.max(p, tmp[n - 1]);
+			while (p < to && buf.get(p - 1) != '\n') {
+				p++;
+			}
+			if (p > tmp[n - 1] && p < to) {
+				tmp[n++] = p;
+			}
+		}
+		tmp[n++] = to;
+		int[] res = new int[n];
+		System.arraycopy(tmp, 0, res, 0, n);
+		return res;
+	}
+
+	private int countRecords(int from, int to) {
+		int cnt = 0;
+		for (int p = from; p < to; p++) {
+			if (buf.get(p) == '\n') {
+				cnt++;
+			}
+		}
+		if (to > from && buf.get(to - 1) != '\n') {
+			cnt++;
+		}
+		return cnt;
+	}
+
+	private void parseChunk(int c) throws IOException {
+		int record = firstRecord[c];
+		int last = vertexCount + faceElement.count;
+		if (record >= last) {
+			return;
+		}
+		AsciiPLYDecoder scanner = new AsciiPLYDecoder();
+		scanner.reset(buf, starts[c], starts[c + 1], vertexCount);
+		int end = firstRecord[c] + recordCount[c];
+		for (; record < end && record < last; record++) {
+			if (record < vertexCount) {
+				scanner.readVertex(vertexElement, roles, magnFactor, vertices, 3 * record);
+			} else {
+				int f = record - vertexCount;
+				triangle[f] = scanner.readFace(faceElement, listInd, faces, 3 * f);
+			}
+		}
+	}
+
+	private class ChunkTask extends RecursiveAction {
+		private static final long serialVersionUID = 1L;
+		private int 	lo;
+		private int 	hi;
+		private boolean counting;
+
+		/**
+		 * Creates a task over a range of chunks.
+		 * @param lo first chunk.
+		 * @param hi chunk after the last one.
+		 * @param counting true for the counting pass, false for the parsing pass.
+		 */
+		ChunkTask(int lo, int hi, boolean counting) {
+			this.lo = lo;
+			this.hi = hi;
+			this.counting = counting;
+		}
+
+		@Override
+		protected void compute() {
+			if (hi - lo > 1) {
+				int mid = (lo + hi) >>> 1;
+				invokeAll(new ChunkTask(lo, mid, counting), new ChunkTask(mid, hi, counting));
+			} else if (counting) {
+				recordCount[lo] = countRecords(starts[lo], starts[lo + 1]);
+			} else {
+				try {
+					parseChunk(lo);
+				} catch (IOException e) {
+					throw new UncheckedIOException(e);
+				}
+			}
+		}
+	}
+}
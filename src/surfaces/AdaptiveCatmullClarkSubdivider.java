@@ -0,0 +1,246 @@
+package surfaces;
+
+import java.util.Arrays;
+
+/**
+ * Catmull-Clark subdivision which only refines where the surface needs it. A face is
+ * marked when the angle between its normal and the normal of a neighbour exceeds the
+ * feature angle, or when one of its edges is longer than the maximum edge length.
+ * Marked faces are split into six as in {@link CatmullClarkSubdivider}. The edges of
+ * marked faces get their edge point, so unmarked neighbours are closed without cracks:
+ * with one split edge the face is halved, with more it is fanned around its face point.
+ * Only vertices whose faces are all marked are moved; the others keep their position.
+ * The new vertices are the old vertices, followed by the points of the split edges and
+ * the face points of the faces that need one.
+ */
+public class AdaptiveCatmullClarkSubdivider extends CatmullClarkSubdivider {
+	private static final int MARK 			= 10;
+	private static final int COUNT 			= 11;
+	private static final int ADAPT 			= 12;
+
+	private double 		cosFeature;
+	private double 		maxEdgeLength;
+
+	private boolean[] 	marked;
+	private int[] 		newEdge;
+	private int[] 		newFace;
+	private int[] 		firstTri;
+	private int[] 		nTri;
+
+	/**
+	 * Creates an adaptive subdivider.
+	 * @param featureAngle dihedral angle in radians above which faces are refined.
+	 * @param maxEdgeLength faces with a longer edge are refined, use infinity to disable.
+	 */
+	public AdaptiveCatmullClarkSubdivider(double featureAngle, double maxEdgeLength) {
+		this.cosFeature = Math.cos(featureAngle);
+		this.maxEdgeLength = maxEdgeLength;
+	}
+
+	@Override
+	public IndexedMesh subdivide(IndexedMesh mesh) {
+		computePoints(mesh);
+		int vNum = mesh.vertexCount();
+		int fNum = mesh.faceCount();
+		int eNum = he.edgeCount();
+		marked = new boolean[fNum];
+		runPass(MARK, fNum);
+
+		//number the edges which are split and the faces which need their face point
+		newEdge = new int[eNum];
+		Arrays.fill(newEdge, -1);
+		int next = vNum;
+		for (int h = 0; h < 3 * fNum; h++) {
+			int g = he.opposite(h);
+			if ((g < 0 || h < g) && (marked[h / 3] || (g >= 0 && marked[g / 3]))) {
+				newEdge[he.edge(h)] = next++;
+			}
+		}
+		newFace = new int[fNum];
+		firstTri = new int[fNum + 1];
+		runPass(COUNT, fNum);
+		for (int f = 0; f < fNum; f++) {
+			if (newFace[f] >= 0) {
+				newFace[f] = next++;
+			}
+			firstTri[f + 1] += firstTri[f];
+		}
+
+		double[] xyz = new double[3 * next];
+		for (int v = 0; v < vNum; v++) {
+			boolean moved = mesh.faceDegree(v) > 0;
+			for (int i = 0; i < mesh.faceDegree(v) && moved; i++) {
+				moved = marked[mesh.incidentFace(v, i)];
+			}
+			System.arraycopy(moved ? res : p, 3 * v, xyz, 3 * v, 3);
+		}
+		for (int e = 0; e < eNum; e++) {
+			if (newEdge[e] >= 0) {
+				System.arraycopy(res, 3 * (eBase + e), xyz, 3 * newEdge[e], 3);
+			}
+		}
+		for (int f = 0; f < fNum; f++) {
+			if (newFace[f] >= 0) {
+				System.arraycopy(res, 3 * (fBase + f), xyz, 3 * newFace[f], 3);
+			}
+		}
+
+		nTri = new int[3 * firstTri[fNum]];
+		runPass(ADAPT, fNum);
+		IndexedMesh ans = new IndexedMesh(xyz, next, nTri, firstTri[fNum]);
+		marked = null;
+		newEdge = null;
+		newFace = null;
+		firstTri = null;
+		nTri = null;
+		release();
+		return ans;
+	}
+
+	@Override
+	protected void pass(int stage, int from, int to) {
+		switch (stage) {
+		case MARK:
+			mark(from, to);
+			break;
+		case COUNT:
+			count(from, to);
+			break;
+		case ADAPT:
+			triangulate(from, to);
+			break;
+		default:
+			super.pass(stage, from, to);
+		}
+	}
+
+	private void mark(int from, int to) {
+		double[] n = new double[3];
+		double[] m = new double[3];
+		for (int f = from; f < to; f++) {
+			normal(f, n);
+			boolean refine = false;
+			for (int k = 0; k < 3 && !refine; k++) {
+				int h = 3 * f + k;
+				int a = 3 * he.origin(h);
+				int b = 3 * he.target(h);
+				double dx = p[b] - p[a];
+				double dy = p[b + 1] - p[a + 1];
+				double dz = p[b + 2] - p[a + 2];
+				refine = dx * dx + dy * dy + dz * dz > maxEdgeLength * maxEdgeLength;
+				int g = he.opposite(h);
+				if (!refine && g >= 0) {
+					normal(g / 3, m);
+					refine = n[0] * m[0] + n[1] * m[1] + n[2] * m[2] < cosFeature;
+				}
+			}
+			marked[f] = refine;
+		}
+	}
+
+	private void normal(int f, double[] out) {
+		int a = 3 * tri[3 * f];
+		int b = 3 * tri[3 * f + 1];
+		int c = 3 * tri[3 * f + 2];
+		double ux = p[b] - p[a];
+		double uy = p[b + 1] - p[a + 1];
+		double uz = p[b + 2] - p[a + 2];
+		double vx = p[c] - p[a];
+		double vy = p[c + 1] - p[a + 1];
+		double vz = p[c + 2] - p[a + 2];
+		double nx = uy * vz - uz * vy;
+		double ny = uz * vx - ux * vz;
+		double nz = ux * vy - uy * vx;
+		double len = Math.sqrt(nx * nx + ny * ny + nz * nz);
+		if (len == 0) {
+			len = 1;
+		}
+		out[0] = nx / len;
+		out[1] = ny / len;
+		out[2] = nz / len;
+	}
+
+	private int splitEdges(int f) {
+		int s = 0;
+		for (int k = 0; k < 3; k++) {
+			if (newEdge[he.edge(3 * f + k)] >= 0) {
+				s++;
+			}
+		}
+		return s;
+	}
+
+	//newFace is only a flag here, the numbers are assigned in face order afterwards
+	private void count(int from, int to) {
+		for (int f = from; f < to; f++) {
+			int s = splitEdges(f);
+			if (marked[f]) {
+				firstTri[f + 1] = 6;
+				newFace[f] = 0;
+			} else if (s >= 2) {
+				firstTri[f + 1] = 3 + s;
+				newFace[f] = 0;
+			} else {
+				firstTri[f + 1] = 1 + s;
+				newFace[f] = -1;
+			}
+		}
+	}
+
+	private void triangulate(int from, int to) {
+		for (int f = from; f < to; f++) {
+			int t = 3 * firstTri[f];
+			int fp = newFace[f];
+			if (marked[f]) {
+				int v1 = tri[3 * f];
+				int v2 = tri[3 * f + 1];
+				int v3 = tri[3 * f + 2];
+				int e12 = newEdge[he.edge(3 * f)];
+				int e23 = newEdge[he.edge(3 * f + 1)];
+				int e13 = newEdge[he.edge(3 * f + 2)];
+				t = put(t, v1, e12, fp);
+				t = put(t, v1, fp, e13);
+				t = put(t, v2, e23, fp);
+				t = put(t, v2, fp, e12);
+				t = put(t, v3, e13, fp);
+				put(t, v3, fp, e23);
+			} else if (fp >= 0) {
+				//transition face: fan around the face point
+				for (int k = 0; k < 3; k++) {
+					int a = tri[3 * f + k];
+					int b = tri[3 * f + (k + 1) % 3];
+					int e = newEdge[he.edge(3 * f + k)];
+					if (e >= 0) {
+						t = put(t, a, e, fp);
+						t = put(t, e, b, fp);
+					} else {
+						t = put(t, a, b, fp);
+					}
+				}
+			} else {
+				int k = 0;
+				while (k < 3 && newEdge[he.edge(3 * f + k)] < 0) {
+					k++;
+				}
+				if (k == 3) {
+					put(t, tri[3 * f], tri[3 * f + 1], tri[3 * f + 2]);
+				} else {
+					//one split edge: halve the face towards the opposite corner
+					int a = tri[3 * f + k];
+					int b = tri[3 * f + (k + 1) % 3];
+					int c = tri[3 * f + (k + 2) % 3];
+					int e = newEdge[he.edge(3 * f + k)];
+					t = put(t, a, e, c);
+					put(t, e, b, c);
+				}
+			}
+		}
+	}
+
+	private int put(int t, int a, int b, int c) {
+		nTri[t] = a;
+		nTri[t + 1] = b;
+		nTri[t + 2] = c;
+		return t + 3;
+	}
+}
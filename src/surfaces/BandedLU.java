@@ -0,0 +1,132 @@
+package surfaces;
+
+import java.util.concurrent.ForkJoinPool;
+
+/**
+ * LU factorization of a banded matrix without pivoting, as used for the collocation
+ * matrices of B-spline interpolation. These are totally positive, so elimination without
+ * row exchanges is stable and L and U stay inside the band. Row i keeps the columns
+ * i - kl to i + ku, so factoring costs O(n kl ku) and every solve O(n (kl + ku)).
+ */
+class BandedLU {
+
+     private int n;
+     private int kl;
+     private int ku;
+     private int width;
+     private double[] a;
+
+     /**
+      * Creates an n by n zero matrix with the given bandwidths.
+      * @param n Size of the matrix.
+      * @param kl Number of diagonals below the main diagonal.
+      * @param ku Number of diagonals above the main diagonal.
+      */
+     BandedLU(int n, int kl, int ku) {
+          this.n = n;
+          this.kl = kl;
+          this.ku = ku;
+          width = kl + ku + 1;
+          a = new double[n * width];
+     }
+
+     /**
+      * Sets an entry inside the band.
+      * @param i Row.
+      * @param j Column, between i - kl and i + ku.
+      * @param value New value.
+      */
+     void set(int i, int j, double value) {
+          a[i * width + j - i + kl] = value;
+     }
+
+     /**
+      * Factors the matrix in place into a unit lower and an upper triangular matrix.
+      */
+     void factor() {
+          for (int k = 0; k < n; k++) {
+               double pivot = a[k * width + kl];
+               int rows = Math.min(n - 1, k + kl);
+               int cols = Math.min(n - 1, k + ku);
+               for (int i = k + 1; i <= rows; i++) {
+                    int ri = i * width - i + kl;
+                    double l = a[ri + k] / pivot;
+                    a[ri + k] = l;
+                    if (l != 0) {
+                         int rk = k * width - k + kl;
+                         for (int j = k + 1; j <= cols; j++) {
+                              a[ri + j] -= l * a[rk + j];
+                         }
+                    }
+               }
+          }
+     }
+
+     /**
+      * Solves the factored system for one right-hand side, in place.
+      * @param b Array holding the right-hand side, overwritten by the solution.
+      * @param off Offset of the first entry.
+      * @param stride Distance between consecutive entries.
+      */
+     void solve(double[] b, int off, int stride) {
+          for (int i = 1; i < n; i++) {
+               int ri = i * width - i + kl;
+               double sum = b[off + i * stride];
+               for (int j = Math.max(0, i - kl); j < i; j++) {
+                    sum -= a[ri + j] * b[off + j * stride];
+               }
+               b[off + i * stride] = sum;
+          }
+          for (int i = n - 1; i >= 0; i--) {
+               int ri = i * width - i + kl;
+               double sum = b[off + i * stride];
+               int last = Math.min(n - 1, i + ku);
+               for (int j = i + 1; j <= last; j++) {
+                    sum -= a[ri + j] * b[off + j * stride];
+               }
+               b[off + i * stride] = sum / a[ri + i];
+          }
+     }
+
+     /**
+      * Solves the factored system for the x, y and z coordinates of a number of point
+      * sequences stored in one array, in parallel if requested. Sequence c starts at
+      * c * step and its points are stride entries apart.
+      * @param b Array holding the right-hand sides, overwritten by the solutions.
+      * @param count Number of point sequences.
+      * @param step Distance between the starts of consecutive sequences.
+      * @param stride Distance between consecutive points of a sequence.
+      * @param parallel true to solve on the common fork-join pool.
+      */
+     void solvePoints(double[] b, int count, int step, int stride, boolean parallel) {
+          int systems = 3 * count;
+          int grain = Math.max(1, systems / (8 * ForkJoinPool.getCommonPoolParallelism()));
+          new Solve(b, step, stride, 0, systems, grain).run(parallel);
+     }
+
+     private class Solve extends RangeAction {
+          private static final long serialVersionUID = 1L;
+          private double[] b;
+          private int step;
+          private int stride;
+
+          Solve(double[] b, int step, int stride, int from, int to, int grain) {
+               super(from, to, grain);
+               this.b = b;
+               this.step = step;
+               this.stride = stride;
+          }
+
+          @Override
+          protected void compute(int from, int to) {
+               for (int s = from; s < to; s++) {
+                    solve(b, (s / 3) * step + s % 3, stride);
+               }
+          }
+
+          @Override
+          protected RangeAction split(int from, int to, int grain) {
+               return new Solve(b, step, stride, from, to, grain);
+          }
+     }
+}
@@ -0,0 +1,302 @@
+package surfaces;
+
+/**
+ * Rational tensor product Bezier patch, one knot span of a NURBS surface after Bezier
+ * extraction. The control points are kept in homogeneous form (x*w, y*w, z*w, w), row
+ * by row along U, and the patch is evaluated with the nested multiplication (Horner)
+ * scheme for Bernstein polynomials, which needs a fixed amount of arithmetic per point
+ * and no knot vector.
+ */
+public class BezierPatch {
+
+     private int degreeU;
+     private int degreeV;
+     private double u0;
+     private double u1;
+     private double v0;
+     private double v1;
+     private double[] net;
+
+     /**
+      * Constructs a patch over the parameter rectangle [u0, u1] x [v0, v1].
+      * @param degreeU Degree along the U-direction.
+      * @param degreeV Degree along the V-direction.
+      * @param u0 Start of the U-range.
+      * @param u1 End of the U-range.
+      * @param v0 Start of the V-range.
+      * @param v1 End of the V-range.
+      * @param net (degreeU + 1) * (degreeV + 1) homogeneous control points, 4 values each.
+      */
+     BezierPatch(int degreeU, int degreeV, double u0, double u1, double v0, double v1, double[] net) {
+          this.degreeU = degreeU;
+          this.degreeV = degreeV;
+          this.u0 = u0;
+          this.u1 = u1;
+          this.v0 = v0;
+          this.v1 = v1;
+          this.net = net;
+     }
+
+     /**
+      * Returns the degree along the U-direction.
+      * @return Degree of the U-direction.
+      */
+     public int getDegreeU() {
+          return degreeU;
+     }
+
+     /**
+      * Returns the degree along the V-direction.
+      * @return Degree of the V-direction.
+      */
+     public int getDegreeV() {
+          return degreeV;
+     }
+
+     /**
+      * Returns the start of the U-range of the patch.
+      * @return Parameter of the first row.
+      */
+     public double getU0() {
+          return u0;
+     }
+
+     /**
+      * Returns the end of the U-range of the patch.
+      * @return Parameter of the last row.
+      */
+     public double getU1() {
+          return u1;
+     }
+
+     /**
+      * Returns the start of the V-range of the patch.
+      * @return Parameter of the first column.
+      */
+     public double getV0() {
+          return v0;
+     }
+
+     /**
+      * Returns the end of the V-range of the patch.
+      * @return Parameter of the last column.
+      */
+     public double getV1() {
+          return v1;
+     }
+
+     /**
+      * Returns the homogeneous control points, which are not copied.
+      * @return 4 values per control point, row by row along U.
+      */
+     public double[] getNet() {
+          return net;
+     }
+
+     /**
+      * Evaluates the patch at a surface parameter inside its range.
+      * @param u Parameter along U.
+      * @param v Parameter along V.
+      * @param out Array receiving x, y and z.
+      * @param off Offset of x in out.
+      */
+     public void evaluate(double u, double v, double[] out, int off) {
+          evaluateLocal((u - u0) / (u1 - u0), (v - v0) / (v1 - v0), out, off);
+     }
+
+     /**
+      * Evaluates the patch at local parameters, 0 at the start and 1 at the end of its range.
+      * The corners are reproduced exactly.
+      * @param s Local parameter along U.
+      * @param t Local parameter along V.
+      * @param out Array receiving x, y and z.
+      * @param off Offset of x in out.
+      */
+     public void evaluateLocal(double s, double t, double[] out, int off) {
+          double s1 = 1 - s;
+          double fact = 1;
+          double bc = 1;
+          double x = 0;
+          double y = 0;
+          double z = 0;
+          double w = 0;
+          for (int i = 0; i <= degreeU; i++) {
+               //curve along V of row i
+               int o = 4 * i * (degreeV + 1);
+               double t1 = 1 - t;
+               double tf = 1;
+               double tb = 1;
+               double rx = net[o] * t1;
+               double ry = net[o + 1] * t1;
+               double rz = net[o + 2] * t1;
+               double rw = net[o + 3] * t1;
+               if (degreeV == 0) {
+                    rx = net[o];
+                    ry = net[o + 1];
+                    rz = net[o + 2];
+                    rw = net[o + 3];
+               }
+               for (int j = 1; j < degreeV; j++) {
+                    o += 4;
+                    tf *= t;
+                    tb = tb * (degreeV - j + 1) / j;
+                    double c = tf * tb;
+                    rx = (rx + c * net[o]) * t1;
+                    ry = (ry + c * net[o + 1]) * t1;
+                    rz = (rz + c * net[o + 2]) * t1;
+                    rw = (rw + c * net[o + 3]) * t1;
+               }
+               if (degreeV > 0) {
+                    o += 4;
+                    double c = tf * t;
+                    rx += c * net[o];
+                    ry += c * net[o + 1];
+                    rz += c * net[o + 2];
+                    rw += c * net[o + 3];
+               }
+
+               //nested multiplication along U over the row values
+               if (degreeU == 0) {
+                    x = rx;
+                    y = ry;
+                    z = rz;
+                    w = rw;
+               } else if (i == 0) {
+                    x = rx * s1;
+                    y = ry * s1;
+                    z = rz * s1;
+                    w = rw * s1;
+               } else if (i < degreeU) {
+                    fact *= s;
+                    bc = bc * (degreeU - i + 1) / i;
+                    double c = fact * bc;
+                    x = (x + c * rx) * s1;
+                    y = (y + c * ry) * s1;
+                    z = (z + c * rz) * s1;
+                    w = (w + c * rw) * s1;
+               } else {
+                    double c = fact * s;
+                    x += c * rx;
+                    y += c * ry;
+                    z += c * rz;
+                    w += c * rw;
+               }
+          }
+          out[off] = x / w;
+          out[off + 1] = y / w;
+          out[off + 2] = z / w;
+     }
+
+     /**
+      * Returns the length of the work array needed by derivativesLocal.
+      * @return Number of doubles.
+      */
+     int workSize() {
+          return 3 * (degreeU + 1) + 3 * (degreeV + 1) + 24;
+     }
+
+     /**
+      * Evaluates the patch and its first and second partial derivatives with respect to
+      * the local parameters.
+      * @param s Local parameter along U.
+      * @param t Local parameter along V.
+      * @param work Array of at least workSize() doubles, overwritten.
+      * @param out Array receiving S, S_s, S_t, S_ss, S_st and S_tt, 3 values each.
+      */
+     void derivativesLocal(double s, double t, double[] work, double[] out) {
+          int pU = degreeU + 1;
+          int pV = degreeV + 1;
+          int bV = 3 * pU;
+          int a = bV + 3 * pV;
+          bernstein(degreeU, s, work, 0);
+          bernstein(degreeV, t, work, bV);
+
+          //a holds A, A_s, A_t, A_ss, A_st and A_tt, each as x*w, y*w, z*w, w
+          for (int c = 0; c < 24; c++) {
+               work[a + c] = 0;
+          }
+          for (int i = 0, o = 0; i < pU; i++) {
+               double u0 = work[i];
+               double u1 = work[pU + i];
+               double u2 = work[2 * pU + i];
+               for (int j = 0; j < pV; j++, o += 4) {
+                    double v0 = work[bV + j];
+                    double v1 = work[bV + pV + j];
+                    double v2 = work[bV + 2 * pV + j];
+                    double b = u0 * v0;
+                    double bs = u1 * v0;
+                    double bt = u0 * v1;
+                    double bss = u2 * v0;
+                    double bst = u1 * v1;
+                    double btt = u0 * v2;
+                    for (int c = 0; c < 4; c++) {
+                         double n = net[o + c];
+                         work[a + c] += b * n;
+                         work[a + 4 + c] += bs * n;
+                         work[a + 8 + c] += bt * n;
+                         work[a + 12 + c] += bss * n;
+                         work[a + 16 + c] += bst * n;
+                         work[a + 20 + c] += btt * n;
+                    }
+               }
+          }
+          double w = work[a + 3];
+          double ws = work[a + 7];
+          double wt = work[a + 11];
+          double wss = work[a + 15];
+          double wst = work[a + 19];
+          double wtt = work[a + 23];
+          for (int c = 0; c < 3; c++) {
+               double p = work[a + c] / w;
+               double ps = (work[a + 4 + c] - ws * p) / w;
+               double pt = (work[a + 8 + c] - wt * p) / w;
+               out[c] = p;
+               out[3 + c] = ps;
+               out[6 + c] = pt;
+               out[9 + c] = (work[a + 12 + c] - 2 * ws * ps - wss * p) / w;
+               out[12 + c] = (work[a + 16 + c] - ws * pt - wt * ps - wst * p) / w;
+               out[15 + c] = (work[a + 20 + c] - 2 * wt * pt - wtt * p) / w;
+          }
+     }
+
+     /**
+      * Writes the Bernstein polynomials of a degree at s, followed by their first and
+      * second derivatives, into b. They are built up one degree at a time and the
+      * derivatives are taken from the polynomials of one and two degrees lower.
+      */
+     private static void bernstein(int degree, double s, double[] b, int off) {
+          int n = degree + 1;
+          int d1 = off + n;
+          int d2 = off + 2 * n;
+          double s1 = 1 - s;
+          for (int i = 0; i < n; i++) {
+               b[d1 + i] = 0;
+               b[d2 + i] = 0;
+          }
+          b[off] = 1;
+          for (int d = 0; ; d++) {
+               //b[off] to b[off + d] hold the polynomials of degree d
+               if (d == degree - 2) {
+                    for (int i = 0; i < n; i++) {
+                         b[d2 + i] = degree * (degree - 1)
+                                   * (lower(b, off, d, i - 2) - 2 * lower(b, off, d, i - 1) + lower(b, off, d, i));
+                    }
+               }
+               if (d == degree - 1) {
+                    for (int i = 0; i < n; i++) {
+                         b[d1 + i] = degree * (lower(b, off, d, i - 1) - lower(b, off, d, i));
+                    }
+               }
+               if (d == degree) break;
+               b[off + d + 1] = s * b[off + d];
+               for (int i = d; i > 0; i--) {
+                    b[off + i] = s1 * b[off + i] + s * b[off + i - 1];
+               }
+               b[off] *= s1;
+          }
+     }
+
+     private static double lower(double[] b, int off, int d, int i) {
+          return i < 0 || i > d ? 0 : b[off + i];
+     }
+}
@@ -0,0 +1,224 @@
+package surfaces;
+
+/**
+ * Catmull-Clark subdivision of triangle meshes in linear time. The rules are the ones
+ * of the Clarkinator: the face point is the centroid, an interior edge point is the
+ * average of the edge midpoint and the midpoint of the two face points, and a vertex
+ * moves to ((n-3)/n)P + (1/n)F + (2/n)E, where F is the average of the surrounding face
+ * points and E the average of the surrounding edge points. Boundary edges get their
+ * midpoint and boundary vertices move to 3/4 P + 1/8 (a + b), where a and b are their
+ * boundary neighbours. Every triangle is split into six triangles around its face point.
+ * The new vertices are the moved old vertices, followed by the edge points and the face points.
+ */
+public class CatmullClarkSubdivider extends Subdivider {
+	private static final int FACE_POINTS 	= 0;
+	private static final int EDGE_POINTS 	= 1;
+	private static final int VERTEX_POINTS 	= 2;
+	private static final int TRIANGLES 		= 3;
+
+	IndexedMesh 	mesh;
+	HalfEdgeMesh 	he;
+	double[] 		p;
+	int[] 			tri;
+	int 			eBase;
+	int 			fBase;
+	double[] 		res;
+	private int[] 	nTri;
+
+	@Override
+	public IndexedMesh subdivide(IndexedMesh mesh) {
+		computePoints(mesh);
+		int fNum = mesh.faceCount();
+		nTri = new int[18 * fNum];
+		runPass(TRIANGLES, fNum);
+
+		IndexedMesh ans = new IndexedMesh(res, res.length / 3, nTri, 6 * fNum);
+		nTri = null;
+		release();
+		return ans;
+	}
+
+	/**
+	 * Computes the moved vertices, all edge points and all face points of the next level,
+	 * stored in that order in res.
+	 * @param mesh the mesh.
+	 */
+	void computePoints(IndexedMesh mesh) {
+		this.mesh = mesh;
+		he = new HalfEdgeMesh(mesh);
+		int vNum = mesh.vertexCount();
+		int fNum = mesh.faceCount();
+		int eNum = he.edgeCount();
+		eBase = vNum;
+		fBase = vNum + eNum;
+		p = mesh.coordinates();
+		tri = mesh.triangles();
+		res = new double[3 * (vNum + eNum + fNum)];
+		//builds the adjacency before the vertex pass reads it from several threads
+		mesh.adjacencyOffsets();
+
+		runPass(FACE_POINTS, fNum);
+		runPass(EDGE_POINTS, 3 * fNum);
+		runPass(VERTEX_POINTS, vNum);
+	}
+
+	/**
+	 * Drops the references to the level that has been processed.
+	 */
+	void release() {
+		mesh = null;
+		he = null;
+		p = null;
+		tri = null;
+		res = null;
+	}
+
+	private void facePoints(int from, int to) {
+		for (int f = from; f < to; f++) {
+			int a = 3 * tri[3 * f];
+			int b = 3 * tri[3 * f + 1];
+			int c = 3 * tri[3 * f + 2];
+			int o = 3 * (fBase + f);
+			for (int k = 0; k < 3; k++) {
+				res[o + k] = (p[a + k] + p[b + k] + p[c + k])/3;
+			}
+		}
+	}
+
+	private void edgePoints(int from, int to) {
+		for (int h = from; h < to; h++) {
+			int g = he.opposite(h);
+			if (g >= 0 && g < h) {
+				continue;
+			}
+			int a = 3 * he.origin(h);
+			int b = 3 * he.target(h);
+			int o = 3 * (eBase + he.edge(h));
+			if (g < 0) {
+				for (int k = 0; k < 3; k++) {
+					res[o + k] = (p[a + k] + p[b + k])/2;
+				}
+			} else {
+				int fi = 3 * (fBase + he.face(h));
+				int fj = 3 * (fBase + he.face(g));
+				for (int k = 0; k < 3; k++) {
+					double middleEdge = (p[a + k] + p[b + k])/2;
+					double middleFaces = (res[fi + k] + res[fj + k])/2;
+					res[o + k] = (middleEdge + middleFaces)/2;
+				}
+			}
+		}
+	}
+
+	private void vertexPoints(int from, int to) {
+		int[] ring = new int[2];
+		int[] seen = new int[16];
+		for (int v = from; v < to; v++) {
+			int n = mesh.faceDegree(v);
+			if (n == 0) {
+				System.arraycopy(p, 3 * v, res, 3 * v, 3);
+				continue;
+			}
+			int boundary = boundaryNeighbours(he, v, ring);
+			if (boundary > 0) {
+				for (int k = 0; k < 3; k++) {
+					res[3 * v + k] = boundary == 2
+							? 0.75 * p[3 * v + k] + 0.125 * (p[3 * ring[0] + k] + p[3 * ring[1] + k])
+							: p[3 * v + k];
+				}
+				continue;
+			}
+			if (seen.length < 2 * n) {
+				seen = new int[2 * n];
+			}
+			double faceX = 0;
+			double faceY = 0;
+			double faceZ = 0;
+			double edgeX = 0;
+			double edgeY = 0;
+			double edgeZ = 0;
+			int edges = 0;
+			for (int i = 0; i < n; i++) {
+				int f = mesh.incidentFace(v, i);
+				int fp = 3 * (fBase + f);
+				faceX += res[fp];
+				faceY += res[fp + 1];
+				faceZ += res[fp + 2];
+				//the two edges of f at v, in the order the Clarkinator visits them
+				int e1;
+				int e2;
+				if (tri[3 * f] == v) {
+					e1 = he.edge(3 * f);
+					e2 = he.edge(3 * f + 2);
+				} else if (tri[3 * f + 1] == v) {
+					e1 = he.edge(3 * f);
+					e2 = he.edge(3 * f + 1);
+				} else {
+					e1 = he.edge(3 * f + 1);
+					e2 = he.edge(3 * f + 2);
+				}
+				for (int j = 0; j < 2; j++) {
+					int e = j == 0 ? e1 : e2;
+					if (edges < n && !contains(seen, edges, e)) {
+						seen[edges++] = e;
+						int ep = 3 * (eBase + e);
+						edgeX += res[ep];
+						edgeY += res[ep + 1];
+						edgeZ += res[ep + 2];
+					}
+				}
+			}
+			double nd = n;
+			double m1 = (nd-3)/nd;
+			double m2 = 1.0/nd;
+			double m3 = 2.0/nd;
+			res[3 * v] = m1 * p[3 * v] + (m2 * (faceX/nd) + m3 * (edgeX/nd));
+			res[3 * v + 1] = m1 * p[3 * v + 1] + (m2 * (faceY/nd) + m3 * (edgeY/nd));
+			res[3 * v + 2] = m1 * p[3 * v + 2] + (m2 * (faceZ/nd) + m3 * (edgeZ/nd));
+		}
+	}
+
+	//every triangle becomes three quadrilaterals, each split in two triangles
+	private void triangles(int from, int to) {
+		for (int f = from; f < to; f++) {
+			int v1 = tri[3 * f];
+			int v2 = tri[3 * f + 1];
+			int v3 = tri[3 * f + 2];
+			int e12 = eBase + he.edge(3 * f);
+			int e23 = eBase + he.edge(3 * f + 1);
+			int e13 = eBase + he.edge(3 * f + 2);
+			int fp = fBase + f;
+			int t = 18 * f;
+			t = put(nTri, t, v1, e12, fp);
+			t = put(nTri, t, v1, fp, e13);
+			t = put(nTri, t, v2, e23, fp);
+			t = put(nTri, t, v2, fp, e12);
+			t = put(nTri, t, v3, e13, fp);
+			put(nTri, t, v3, fp, e23);
+		}
+	}
+
+	private static int put(int[] tri, int t, int a, int b, int c) {
+		tri[t] = a;
+		tri[t + 1] = b;
+		tri[t + 2] = c;
+		return t + 3;
+	}
+
+	@Override
+	protected void pass(int stage, int from, int to) {
+		switch (stage) {
+		case FACE_POINTS:
+			facePoints(from, to);
+			break;
+		case EDGE_POINTS:
+			edgePoints(from, to);
+			break;
+		case VERTEX_POINTS:
+			vertexPoints(from, to);
+			break;
+		default:
+			triangles(from, to);
+		}
+	}
+}
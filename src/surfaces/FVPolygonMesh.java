@@ -13,6 +13,7 @@ public class FVPolygonMesh extends PolygonMesh {
 	
 	private ArrayList<Triangle3D> 				faces;
 	private ArrayList<ArrayList<Triangle3D>> 	verticesToFaces;
+	private IndexedMesh 						indexed;
 	
 	/**
 	 * Creates a new Face-Vertex Polygon Mesh with the given information.
@@ -29,6 +30,18 @@ public class FVPolygonMesh extends PolygonMesh {
 		this.verticesToFaces = verticesToFaces;
 	}
 	
+	/**
+	 * Creates a new Face-Vertex Polygon Mesh backed by an indexed mesh. The vertex and face
+	 * objects are only created when they are first asked for, until then the mesh is kept
+	 * in its compact form.
+	 * @param mesh the indexed mesh.
+	 */
+	public FVPolygonMesh(IndexedMesh mesh) {
+		instCnt++;
+		assignLabel();
+		indexed = mesh;
+	}
+	
 	/**
 	 * Creates a new empty Face-Vertex Polygon Mesh.
 	 */
@@ -46,6 +59,7 @@ public class FVPolygonMesh extends PolygonMesh {
 	 */
 	@Override
 	public ArrayList<Triangle3D> triangulate() {
+		materialize();
 		ArrayList<Triangle3D> tmp = new ArrayList<>();
 		if (vertices.size() == 1) {
 			tmp.add(new Triangle3D(vertices.get(0), vertices.get(0), vertices.get(0)));
@@ -58,6 +72,46 @@ public class FVPolygonMesh extends PolygonMesh {
 			return faces;
 		}
 	}
+	
+	/**
+	 * Returns the vertices of the Face-Vertex polygon Mesh.
+	 * @return the vertices.
+	 */
+	@Override
+	public ArrayList<Point3D> vertices() {
+		materialize();
+		return vertices;
+	}
+	
+	/**
+	 * Returns the mesh in indexed form. Face corners which are not in the vertex list are appended to it.
+	 * @return the indexed mesh.
+	 */
+	public IndexedMesh toIndexedMesh() {
+		if (indexed != null) {
+			return indexed;
+		}
+		return IndexedMesh.of(vertices, triangulate());
+	}
+	
+	private void materialize() {
+		if (indexed == null) {
+			return;
+		}
+		vertices = indexed.vertices();
+		faces = indexed.triangulate(vertices);
+		int[] offsets = indexed.adjacencyOffsets();
+		int[] adjacent = indexed.adjacentFaces();
+		verticesToFaces = new ArrayList<ArrayList<Triangle3D>>(vertices.size());
+		for (int v = 0; v < vertices.size(); v++) {
+			ArrayList<Triangle3D> tmp = new ArrayList<>(offsets[v + 1] - offsets[v]);
+			for (int i = offsets[v]; i < offsets[v + 1]; i++) {
+				tmp.add(faces.get(adjacent[i]));
+			}
+			verticesToFaces.add(tmp);
+		}
+		indexed = null;
+	}
 
 	/**
 	 * Adds a new point to the polygon Mesh.
@@ -66,6 +120,7 @@ public class FVPolygonMesh extends PolygonMesh {
 	 */
 	@Override
 	public void addVertex(Point3D p, String instruct) {
+		materialize();
 		if (vertices.size() <= 1) {
 			vertices.add(p);
 			verticesToFaces.add(new ArrayList<>());
@@ -124,8 +179,10 @@ public class FVPolygonMesh extends PolygonMesh {
 	 */
 	@Override
 	public String toString() {
-		return "Face-Vertex Polygon Mesh" + "\n" + "Vertices: " + vertices.size() + 
-				"\n" + "Faces: " + faces.size() + "\n" + "Surface area: " + surfaceArea() + " sq. u." +
+		int vNum = indexed != null ? indexed.vertexCount() : vertices.size();
+		int fNum = indexed != null ? indexed.faceCount() : faces.size();
+		return "Face-Vertex Polygon Mesh" + "\n" + "Vertices: " + vNum + 
+				"\n" + "Faces: " + fNum + "\n" + "Surface area: " + surfaceArea() + " sq. u." +
 				"\n" + "Volume: " + volume() + " cub. u.";
 	}
 
@@ -135,6 +192,9 @@ public class FVPolygonMesh extends PolygonMesh {
 	 */
 	@Override
 	public double surfaceArea() {
+		if (indexed != null) {
+			return indexed.surfaceArea();
+		}
 		double sum = 0;
 		for (Triangle3D t : faces) {
 			sum += t.surfaceArea();
@@ -148,6 +208,9 @@ public class FVPolygonMesh extends PolygonMesh {
 	 * @return the total volume of the Face-Vertex polygon Mesh.
 	 */
 	public double volume() {
+		if (indexed != null) {
+			return indexed.volume(simplicityAssumption);
+		}
 		if (simplicityAssumption) {
 			double x0 = 0;
 			double y0 = 0;
@@ -221,6 +284,7 @@ public class FVPolygonMesh extends PolygonMesh {
 	@Override
 	public void add3Vertices(Point3D p1, Point3D p2, Point3D p3,
 			String instruct, double w) {
+		materialize();
 		vertices.add(p1);
 		verticesToFaces.add(new ArrayList<>());
 		vertices.add(p2);
@@ -239,6 +303,7 @@ public class FVPolygonMesh extends PolygonMesh {
 	 * @return the arraylist with the faces to vertices.
 	 */
 	public ArrayList<ArrayList<Triangle3D>> vertsToFaces() {
+		materialize();
 		return verticesToFaces;
 	}
 }
@@ -0,0 +1,101 @@
+package surfaces;
+
+import java.util.HashMap;
+
+/**
+ * Parameter values along one axis of a separable (t, s) grid. Next to the values the axis
+ * keeps tables of cos(omega v) and sin(omega v), built the first time a frequency omega is
+ * asked for, so that a surface evaluated on the grid calls the trigonometric functions
+ * once per row and once per column instead of once per sample.
+ */
+public class GridAxis {
+	private double[] 					values;
+	private double 						start;
+	private double 						end;
+	private int 						n;
+	private HashMap<Double, double[][]> tables 		= new HashMap<>();
+
+	/**
+	 * Creates the regular axis of the n + 1 values start + i (end - start) / n.
+	 * @param start first value.
+	 * @param end last value.
+	 * @param n number of intervals.
+	 */
+	public GridAxis(double start, double end, int n) {
+		this.values = new double[n + 1];
+		double step = (end - start) / n;
+		//from i, so that no rounding error builds up; the last one is end itself
+		for (int i = 0; i < n; i++) {
+			values[i] = start + i * step;
+		}
+		values[n] = end;
+		this.start = start;
+		this.end = end;
+		this.n = n;
+	}
+
+	/**
+	 * Creates an axis through the given values, which are not copied.
+	 * @param values the parameter values.
+	 */
+	public GridAxis(double[] values) {
+		this.values = values;
+		this.start = Double.NaN;
+		this.end = Double.NaN;
+		this.n = -1;
+	}
+
+	/**
+	 * Returns true if this is the regular axis with the given bounds and number of intervals.
+	 */
+	boolean isRegular(double start, double end, int n) {
+		return this.n == n && this.start == start && this.end == end;
+	}
+
+	/**
+	 * Returns the number of values.
+	 * @return the number of values.
+	 */
+	public int size() {
+		return values.length;
+	}
+
+	/**
+	 * Returns the values of the axis; the array is shared and must not be changed.
+	 * @return the values.
+	 */
+	public double[] values() {
+		return values;
+	}
+
+	/**
+	 * Returns cos(omega v) for every value v; the array is shared and must not be changed.
+	 * @param omega the frequency.
+	 * @return the cosines.
+	 */
+	public double[] cos(double omega) {
+		return table(omega)[0];
+	}
+
+	/**
+	 * Returns sin(omega v) for every value v; the array is shared and must not be changed.
+	 * @param omega the frequency.
+	 * @return the sines.
+	 */
+	public double[] sin(double omega) {
+		return table(omega)[1];
+	}
+
+	private synchronized double[][] table(double omega) {
+		double[][] t = tables.get(omega);
+		if (t == null) {
+			t = new double[2][values.length];
+			for (int i = 0; i < values.length; i++) {
+				t[0][i] = Math.cos(omega * values[i]);
+				t[1][i] = Math.sin(omega * values[i]);
+			}
+			tables.put(omega, t);
+		}
+		return t;
+	}
+}
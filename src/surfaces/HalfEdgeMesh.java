@@ -0,0 +1,324 @@
+package surfaces;
+
+import java.util.Arrays;
+
+/**
+ * Half-edge connectivity of a triangle mesh, stored in int arrays. Half-edge h = 3f + k
+ * runs from corner k to corner k + 1 of face f, so next, prev and face are pure arithmetic;
+ * only the opposite half-edges, the undirected edge numbers and one outgoing half-edge per
+ * vertex are stored. Everything is built in linear time with a hash on vertex index pairs.
+ * Edges shared by more than two faces, or by two faces of inconsistent orientation, are
+ * left unpaired and make the mesh non-manifold.
+ */
+public class HalfEdgeMesh {
+	private IndexedMesh mesh;
+	private int[] 		tri;
+	private int 		faceCount;
+	private int 		vertexCount;
+
+	private int[] 		opposite;
+	private int[] 		edge;
+	private int 		edgeCount;
+	private int[] 		outgoing;
+	private boolean 	nonManifoldEdges;
+
+	/**
+	 * Creates the half-edge structure of a Face-Vertex polygon Mesh.
+	 * @param pm the mesh.
+	 */
+	public HalfEdgeMesh(FVPolygonMesh pm) {
+		this(pm.toIndexedMesh());
+	}
+
+	/**
+	 * Creates the half-edge structure of an indexed mesh.
+	 * @param mesh the mesh.
+	 */
+	public HalfEdgeMesh(IndexedMesh mesh) {
+		this.mesh = mesh;
+		this.tri = mesh.triangles();
+		this.faceCount = mesh.faceCount();
+		this.vertexCount = mesh.vertexCount();
+		int n = 3 * faceCount;
+
+		opposite = new int[n];
+		Arrays.fill(opposite, -1);
+		int cap = Integer.highestOneBit(Math.max(2 * n, 2)) << 1;
+		long[] keys = new long[cap];
+		int[] vals = new int[cap];
+		Arrays.fill(vals, -1);
+		for (int h = 0; h < n; h++) {
+			int a = origin(h);
+			int b = target(h);
+			int g = lookup(keys, vals, key(b, a));
+			if (g >= 0 && opposite[g] < 0) {
+				opposite[g] = h;
+				opposite[h] = g;
+			} else {
+				if (g >= 0 || !insert(keys, vals, key(a, b), h)) {
+					nonManifoldEdges = true;
+				}
+			}
+		}
+
+		edge = new int[n];
+		for (int h = 0; h < n; h++) {
+			if (opposite[h] < 0 || h < opposite[h]) {
+				edge[h] = edgeCount++;
+			} else {
+				edge[h] = edge[opposite[h]];
+			}
+		}
+
+		outgoing = new int[vertexCount];
+		Arrays.fill(outgoing, -1);
+		for (int h = 0; h < n; h++) {
+			int v = origin(h);
+			if (outgoing[v] < 0 || opposite[h] < 0) {
+				outgoing[v] = h;
+			}
+		}
+	}
+
+	private static long key(int a, int b) {
+		return ((long) a << 32) | (b & 0xFFFFFFFFL);
+	}
+
+	private static int slot(long key, int mask) {
+		long x = key * 0x9E3779B97F4A7C15L;
+		return (int) (x ^ (x >>> 32)) & mask;
+	}
+
+	private static int lookup(long[] keys, int[] vals, long key) {
+		int mask = keys.length - 1;
+		for (int i = slot(key, mask); vals[i] >= 0; i = (i + 1) & mask) {
+			if (keys[i] == key) {
+				return vals[i];
+			}
+		}
+		return -1;
+	}
+
+	private static boolean insert(long[] keys, int[] vals, long key, int val) {
+		int mask = keys.length - 1;
+		int i = slot(key, mask);
+		for (; vals[i] >= 0; i = (i + 1) & mask) {
+			if (keys[i] == key) {
+				return false;
+			}
+		}
+		keys[i] = key;
+		vals[i] = val;
+		return true;
+	}
+
+	/**
+	 * Returns the underlying indexed mesh.
+	 * @return the mesh.
+	 */
+	public IndexedMesh mesh() {
+		return mesh;
+	}
+
+	/**
+	 * Returns the number of half-edges, three per face.
+	 * @return the half-edge count.
+	 */
+	public int halfEdgeCount() {
+		return 3 * faceCount;
+	}
+
+	/**
+	 * Returns the number of undirected edges.
+	 * @return the edge count.
+	 */
+	public int edgeCount() {
+		return edgeCount;
+	}
+
+	/**
+	 * Returns the next half-edge in the same face.
+	 * @param h the half-edge.
+	 * @return the next half-edge.
+	 */
+	public int next(int h) {
+		return h % 3 == 2 ? h - 2 : h + 1;
+	}
+
+	/**
+	 * Returns the previous half-edge in the same face.
+	 * @param h the half-edge.
+	 * @return the previous half-edge.
+	 */
+	public int prev(int h) {
+		return h % 3 == 0 ? h + 2 : h - 1;
+	}
+
+	/**
+	 * Returns the face a half-edge belongs to.
+	 * @param h the half-edge.
+	 * @return the face index.
+	 */
+	public int face(int h) {
+		return h / 3;
+	}
+
+	/**
+	 * Returns the vertex a half-edge starts at.
+	 * @param h the half-edge.
+	 * @return the vertex index.
+	 */
+	public int origin(int h) {
+		return tri[h];
+	}
+
+	/**
+	 * Returns the vertex a half-edge points to.
+	 * @param h the half-edge.
+	 * @return the vertex index.
+	 */
+	public int target(int h) {
+		return tri[next(h)];
+	}
+
+	/**
+	 * Returns the half-edge running the other way along the same edge.
+	 * @param h the half-edge.
+	 * @return the opposite half-edge, or -1 if h lies on the boundary.
+	 */
+	public int opposite(int h) {
+		return opposite[h];
+	}
+
+	/**
+	 * Returns the undirected edge a half-edge belongs to; both halves of an edge share the number.
+	 * @param h the half-edge.
+	 * @return the edge index, 0 to edgeCount() - 1.
+	 */
+	public int edge(int h) {
+		return edge[h];
+	}
+
+	/**
+	 * Checks whether a half-edge lies on the boundary.
+	 * @param h the half-edge.
+	 * @return true if it has no opposite.
+	 */
+	public boolean isBoundary(int h) {
+		return opposite[h] < 0;
+	}
+
+	/**
+	 * Returns the face across the k-th edge of a face.
+	 * @param f the face.
+	 * @param k the edge, 0 to 2, running from corner k to corner k + 1.
+	 * @return the neighbouring face, or -1 on the boundary.
+	 */
+	public int neighbour(int f, int k) {
+		int g = opposite[3 * f + k];
+		return g < 0 ? -1 : g / 3;
+	}
+
+	/**
+	 * Returns a half-edge starting at the given vertex. For boundary vertices this is the
+	 * boundary half-edge, so that rotating with {@link #rotate(int)} visits the whole fan.
+	 * @param v the vertex.
+	 * @return the half-edge, or -1 if the vertex is not used by any face.
+	 */
+	public int outgoing(int v) {
+		return outgoing[v];
+	}
+
+	/**
+	 * Returns the next half-edge around the origin of h.
+	 * @param h a half-edge.
+	 * @return the next half-edge with the same origin, or -1 when the boundary is reached.
+	 */
+	public int rotate(int h) {
+		return opposite[prev(h)];
+	}
+
+	/**
+	 * Checks whether a vertex lies on the boundary.
+	 * @param v the vertex.
+	 * @return true if one of its edges has only one face.
+	 */
+	public boolean isBoundaryVertex(int v) {
+		return outgoing[v] >= 0 && opposite[outgoing[v]] < 0;
+	}
+
+	/**
+	 * Collects the one-ring of a vertex in rotation order.
+	 * @param v the vertex.
+	 * @param out array receiving the neighbouring vertices, at least {@link #valence(int)} long.
+	 * @return the number of neighbours written.
+	 */
+	public int neighbours(int v, int[] out) {
+		int start = outgoing[v];
+		if (start < 0) {
+			return 0;
+		}
+		int n = 0;
+		int h = start;
+		do {
+			out[n++] = target(h);
+			int g = rotate(h);
+			if (g < 0) {
+				out[n++] = origin(prev(h));
+				break;
+			}
+			h = g;
+		} while (h != start);
+		return n;
+	}
+
+	/**
+	 * Returns the number of edges meeting at a vertex.
+	 * @param v the vertex.
+	 * @return the valence.
+	 */
+	public int valence(int v) {
+		int start = outgoing[v];
+		if (start < 0) {
+			return 0;
+		}
+		int n = 0;
+		int h = start;
+		do {
+			n++;
+			int g = rotate(h);
+			if (g < 0) {
+				return n + 1;
+			}
+			h = g;
+		} while (h != start);
+		return n;
+	}
+
+	/**
+	 * Checks whether the mesh is a manifold: every edge has at most two consistently oriented
+	 * faces and the faces around every vertex form a single fan.
+	 * @return true if the mesh is manifold.
+	 */
+	public boolean isManifold() {
+		if (nonManifoldEdges) {
+			return false;
+		}
+		for (int v = 0; v < vertexCount; v++) {
+			int start = outgoing[v];
+			if (start < 0) {
+				continue;
+			}
+			int fan = 0;
+			int h = start;
+			do {
+				fan++;
+				h = rotate(h);
+			} while (h >= 0 && h != start);
+			if (fan != mesh.faceDegree(v)) {
+				return false;
+			}
+		}
+		return true;
+	}
+}
@@ -0,0 +1,326 @@
+package surfaces;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+
+import org.apache.commons.math3.geometry.euclidean.threed.Vector3D;
+
+/**
+ * Compact triangle mesh stored as flat arrays: the coordinates of vertex i are
+ * xyz[3i..3i+2] and the corners of face f are tri[3f..3f+2]. The vertex to face
+ * adjacency is kept in compressed (CSR) form and built the first time it is needed.
+ */
+public class IndexedMesh {
+	private double[] 	xyz;
+	private int 		vertexCount;
+	private int[] 		tri;
+	private int 		faceCount;
+	private double[] 	normals;
+
+	private int[] 		adjOffsets;
+	private int[] 		adjFaces;
+
+	/**
+	 * Creates a new indexed mesh around the given arrays, which are not copied.
+	 * @param xyz coordinates of the vertices, at least 3 * vertexCount long.
+	 * @param vertexCount number of vertices.
+	 * @param tri vertex indices of the triangles, at least 3 * faceCount long.
+	 * @param faceCount number of triangles.
+	 */
+	public IndexedMesh(double[] xyz, int vertexCount, int[] tri, int faceCount) {
+		this.xyz = xyz;
+		this.vertexCount = vertexCount;
+		this.tri = tri;
+		this.faceCount = faceCount;
+	}
+
+	/**
+	 * Creates an indexed mesh from a list of vertices and the triangles built on them.
+	 * Corners are looked up by object identity; corners which are not in the vertex list
+	 * are appended to it once.
+	 * @param vertices the vertices.
+	 * @param faces the triangles.
+	 * @return the indexed mesh.
+	 */
+	public static IndexedMesh of(ArrayList<Point3D> vertices, ArrayList<Triangle3D> faces) {
+		IdentityHashMap<Point3D, Integer> indices = new IdentityHashMap<>(2 * vertices.size());
+		ArrayList<Point3D> extra = new ArrayList<>();
+		for (int i = 0; i < vertices.size(); i++) {
+			indices.put(vertices.get(i), i);
+		}
+		int[] tri = new int[3 * faces.size()];
+		int k = 0;
+		for (Triangle3D t : faces) {
+			for (Point3D p : t.vertices()) {
+				Integer ind = indices.get(p);
+				if (ind == null) {
+					ind = vertices.size() + extra.size();
+					indices.put(p, ind);
+					extra.add(p);
+				}
+				tri[k++] = ind;
+			}
+		}
+		int vNum = vertices.size() + extra.size();
+		double[] xyz = new double[3 * vNum];
+		for (int i = 0; i < vNum; i++) {
+			Point3D p = i < vertices.size() ? vertices.get(i) : extra.get(i - vertices.size());
+			xyz[3 * i] = p.getX();
+			xyz[3 * i + 1] = p.getY();
+			xyz[3 * i + 2] = p.getZ();
+		}
+		return new IndexedMesh(xyz, vNum, tri, faces.size());
+	}
+
+	/**
+	 * Returns the number of vertices.
+	 * @return the vertex count.
+	 */
+	public int vertexCount() {
+		return vertexCount;
+	}
+
+	/**
+	 * Returns the number of triangles.
+	 * @return the face count.
+	 */
+	public int faceCount() {
+		return faceCount;
+	}
+
+	/**
+	 * Returns the coordinate array; vertex i occupies the entries 3i to 3i+2.
+	 * @return the coordinates.
+	 */
+	public double[] coordinates() {
+		return xyz;
+	}
+
+	/**
+	 * Returns the index array; the corners of face f occupy the entries 3f to 3f+2.
+	 * @return the triangle indices.
+	 */
+	public int[] triangles() {
+		return tri;
+	}
+
+	/**
+	 * Returns the vertex normals, laid out like the coordinates.
+	 * @return the normals, or null if the mesh has none.
+	 */
+	public double[] normals() {
+		return normals;
+	}
+
+	/**
+	 * Attaches vertex normals to the mesh; the array is not copied.
+	 * @param normals unit normals, 3 * vertexCount entries, or null to remove them.
+	 */
+	public void setNormals(double[] normals) {
+		this.normals = normals;
+	}
+
+	/**
+	 * Returns the vertex index of a corner of a face.
+	 * @param f the face.
+	 * @param k the corner, 0 to 2.
+	 * @return the vertex index.
+	 */
+	public int corner(int f, int k) {
+		return tri[3 * f + k];
+	}
+
+	/**
+	 * Returns the number of faces the given vertex belongs to.
+	 * @param v the vertex.
+	 * @return the number of incident faces.
+	 */
+	public int faceDegree(int v) {
+		buildAdjacency();
+		return adjOffsets[v + 1] - adjOffsets[v];
+	}
+
+	/**
+	 * Returns one of the faces the given vertex belongs to, in increasing face order.
+	 * @param v the vertex.
+	 * @param k which incident face, 0 to faceDegree(v) - 1.
+	 * @return the face index.
+	 */
+	public int incidentFace(int v, int k) {
+		buildAdjacency();
+		return adjFaces[adjOffsets[v] + k];
+	}
+
+	/**
+	 * Returns the CSR offsets of the vertex to face adjacency: the faces of vertex v are
+	 * stored in {@link #adjacentFaces()} between adjacencyOffsets()[v] and adjacencyOffsets()[v + 1].
+	 * @return the offsets, vertexCount + 1 entries.
+	 */
+	public int[] adjacencyOffsets() {
+		buildAdjacency();
+		return adjOffsets;
+	}
+
+	/**
+	 * Returns the incident faces of all vertices, see {@link #adjacencyOffsets()}.
+	 * @return the incident faces, 3 * faceCount entries.
+	 */
+	public int[] adjacentFaces() {
+		buildAdjacency();
+		return adjFaces;
+	}
+
+	private void buildAdjacency() {
+		if (adjOffsets != null) {
+			return;
+		}
+		int[] offsets = new int[vertexCount + 1];
+		for (int i = 0; i < 3 * faceCount; i++) {
+			offsets[tri[i] + 1]++;
+		}
+		for (int v = 0; v < vertexCount; v++) {
+			offsets[v + 1] += offsets[v];
+		}
+		int[] fill = new int[vertexCount];
+		int[] faces = new int[3 * faceCount];
+		for (int i = 0; i < 3 * faceCount; i++) {
+			int v = tri[i];
+			faces[offsets[v] + fill[v]++] = i / 3;
+		}
+		adjFaces = faces;
+		adjOffsets = offsets;
+	}
+
+	/**
+	 * Creates Point3D objects for all vertices.
+	 * @return arraylist containing the vertices.
+	 */
+	public ArrayList<Point3D> vertices() {
+		ArrayList<Point3D> res = new ArrayList<>(vertexCount);
+		for (int i = 0; i < vertexCount; i++) {
+			res.add(new Point3D(xyz[3 * i], xyz[3 * i + 1], xyz[3 * i + 2]));
+		}
+		return res;
+	}
+
+	/**
+	 * Creates Triangle3D objects for all faces, sharing the given vertex objects.
+	 * @param vertices the vertices as returned by {@link #vertices()}.
+	 * @return arraylist containing the faces.
+	 */
+	public ArrayList<Triangle3D> triangulate(ArrayList<Point3D> vertices) {
+		ArrayList<Triangle3D> res = new ArrayList<>(faceCount);
+		for (int f = 0; f < faceCount; f++) {
+			res.add(new Triangle3D(vertices.get(tri[3 * f]), vertices.get(tri[3 * f + 1]),
+					vertices.get(tri[3 * f + 2])));
+		}
+		return res;
+	}
+
+	/**
+	 * Returns a copy of the mesh in which vertices with exactly the same coordinates are merged.
+	 * The first occurrence of every position is kept and the order of the vertices is preserved.
+	 * @return the welded mesh.
+	 */
+	public IndexedMesh welded() {
+		HashMap<Vector3D, Integer> seen = new HashMap<>(2 * vertexCount);
+		int[] map = new int[vertexCount];
+		double[] nXyz = new double[3 * vertexCount];
+		int n = 0;
+		for (int v = 0; v < vertexCount; v++) {
+			Vector3D key = new Vector3D(xyz[3 * v], xyz[3 * v + 1], xyz[3 * v + 2]);
+			Integer ind = seen.get(key);
+			if (ind == null) {
+				ind = n++;
+				seen.put(key, ind);
+				System.arraycopy(xyz, 3 * v, nXyz, 3 * ind, 3);
+			}
+			map[v] = ind;
+		}
+		int[] nTri = new int[3 * faceCount];
+		for (int i = 0; i < nTri.length; i++) {
+			nTri[i] = map[tri[i]];
+		}
+		return new IndexedMesh(nXyz, n, nTri, faceCount);
+	}
+
+	/**
+	 * Calculates the surface area as the sum of the areas of the triangles.
+	 * @return the surface area.
+	 */
+	public double surfaceArea() {
+		double sum = 0;
+		for (int f = 0; f < faceCount; f++) {
+			int a = 3 * tri[3 * f];
+			int b = 3 * tri[3 * f + 1];
+			int c = 3 * tri[3 * f + 2];
+			//same sorted Heron formula as Triangle3D.surfaceArea, u >= v >= w
+			double u = dist(a, b);
+			double v = dist(a, c);
+			double w = dist(b, c);
+			double tmp;
+			if (u < v) {
+				tmp = u; u = v; v = tmp;
+			}
+			if (v < w) {
+				tmp = v; v = w; w = tmp;
+			}
+			if (u < v) {
+				tmp = u; u = v; v = tmp;
+			}
+			sum += 0.25 * Math.sqrt((u + (v + w))*(w - (u - v))*(w + (u - v))*(u + (v - w)));
+		}
+		return sum;
+	}
+
+	private double dist(int a, int b) {
+		return Math.sqrt(Math.pow(xyz[b] - xyz[a], 2) + Math.pow(xyz[b + 1] - xyz[a + 1], 2)
+				+ Math.pow(xyz[b + 2] - xyz[a + 2], 2));
+	}
+
+	/**
+	 * Calculates the enclosed volume as the sum of signed tetrahedra.
+	 * @param centred true to measure the tetrahedra from the centroid of the vertices
+	 * and sum their absolute volumes, false to sum signed volumes from the origin.
+	 * @return the volume.
+	 */
+	public double volume(boolean centred) {
+		double x0 = 0;
+		double y0 = 0;
+		double z0 = 0;
+		if (centred) {
+			double sumX = 0;
+			double sumY = 0;
+			double sumZ = 0;
+			for (int i = 0; i < vertexCount; i++) {
+				sumX += xyz[3 * i];
+				sumY += xyz[3 * i + 1];
+				sumZ += xyz[3 * i + 2];
+			}
+			x0 = sumX/vertexCount;
+			y0 = sumY/vertexCount;
+			z0 = sumZ/vertexCount;
+		}
+		double sum = 0;
+		for (int f = 0; f < faceCount; f++) {
+			int a = 3 * tri[3 * f];
+			int b = 3 * tri[3 * f + 1];
+			int c = 3 * tri[3 * f + 2];
+			Vector3D v1 = new Vector3D(xyz[a] - x0, xyz[a + 1] - y0, xyz[a + 2] - z0);
+			Vector3D v2 = new Vector3D(xyz[b] - x0, xyz[b + 1] - y0, xyz[b + 2] - z0);
+			Vector3D v3 = new Vector3D(xyz[c] - x0, xyz[c + 1] - y0, xyz[c + 2] - z0);
+			double tmp = Math.abs((v1.crossProduct(v2)).dotProduct(v3)) * (1.0/6.0);
+			if (centred) {
+				sum += tmp;
+			} else {
+				double sign = v1.dotProduct((v2.subtract(v1)).crossProduct(v3.subtract(v1)));
+				if (sign != 0) {
+					sign = sign/Math.abs(sign);
+				}
+				sum += tmp * sign;
+			}
+		}
+		return Math.abs(sum);
+	}
+}
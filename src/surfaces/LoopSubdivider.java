@@ -0,0 +1,143 @@
+package surfaces;
+
+/**
+ * Loop subdivision: every triangle is split into four by inserting a point on each edge.
+ * An interior edge point is 3/8 (a + b) + 1/8 (c + d), where c and d are the opposite
+ * corners of the two faces, and an interior vertex of valence n moves to
+ * (1 - n beta) P + beta times the sum of its neighbours, with Loop's original
+ * beta = (5/8 - (3/8 + 1/4 cos(2 pi / n))^2) / n. Boundary edges get their midpoint and
+ * boundary vertices move to 3/4 P + 1/8 (a + b). The new vertices are the moved old
+ * vertices followed by the edge points.
+ */
+public class LoopSubdivider extends Subdivider {
+	private static final int EDGE_POINTS 	= 0;
+	private static final int VERTEX_POINTS 	= 1;
+	private static final int TRIANGLES 		= 2;
+
+	private IndexedMesh 	mesh;
+	private HalfEdgeMesh 	he;
+	private double[] 		p;
+	private int[] 			tri;
+	private int 			eBase;
+	private double[] 		res;
+	private int[] 			nTri;
+
+	@Override
+	public IndexedMesh subdivide(IndexedMesh mesh) {
+		this.mesh = mesh;
+		he = new HalfEdgeMesh(mesh);
+		int vNum = mesh.vertexCount();
+		int fNum = mesh.faceCount();
+		int eNum = he.edgeCount();
+		eBase = vNum;
+		p = mesh.coordinates();
+		tri = mesh.triangles();
+		res = new double[3 * (vNum + eNum)];
+		nTri = new int[12 * fNum];
+		mesh.adjacencyOffsets();
+
+		runPass(EDGE_POINTS, 3 * fNum);
+		runPass(VERTEX_POINTS, vNum);
+		runPass(TRIANGLES, fNum);
+
+		IndexedMesh ans = new IndexedMesh(res, vNum + eNum, nTri, 4 * fNum);
+		this.mesh = null;
+		he = null;
+		p = null;
+		tri = null;
+		res = null;
+		nTri = null;
+		return ans;
+	}
+
+	@Override
+	protected void pass(int stage, int from, int to) {
+		switch (stage) {
+		case EDGE_POINTS:
+			edgePoints(from, to);
+			break;
+		case VERTEX_POINTS:
+			vertexPoints(from, to);
+			break;
+		default:
+			triangles(from, to);
+		}
+	}
+
+	private void edgePoints(int from, int to) {
+		for (int h = from; h < to; h++) {
+			int g = he.opposite(h);
+			if (g >= 0 && g < h) {
+				continue;
+			}
+			int a = 3 * he.origin(h);
+			int b = 3 * he.target(h);
+			int o = 3 * (eBase + he.edge(h));
+			if (g < 0) {
+				for (int k = 0; k < 3; k++) {
+					res[o + k] = (p[a + k] + p[b + k])/2;
+				}
+			} else {
+				int c = 3 * he.origin(he.prev(h));
+				int d = 3 * he.origin(he.prev(g));
+				for (int k = 0; k < 3; k++) {
+					res[o + k] = 0.375 * (p[a + k] + p[b + k]) + 0.125 * (p[c + k] + p[d + k]);
+				}
+			}
+		}
+	}
+
+	private void vertexPoints(int from, int to) {
+		int[] boundary = new int[2];
+		int[] ring = new int[16];
+		for (int v = from; v < to; v++) {
+			int deg = mesh.faceDegree(v);
+			int b = deg == 0 ? 0 : boundaryNeighbours(he, v, boundary);
+			if (deg == 0 || b > 0) {
+				for (int k = 0; k < 3; k++) {
+					res[3 * v + k] = b == 2
+							? 0.75 * p[3 * v + k] + 0.125 * (p[3 * boundary[0] + k] + p[3 * boundary[1] + k])
+							: p[3 * v + k];
+				}
+				continue;
+			}
+			if (ring.length < 2 * deg) {
+				ring = new int[2 * deg];
+			}
+			int n = ring(mesh, v, ring);
+			double x = 3.0/8.0 + 0.25 * Math.cos(2 * Math.PI / n);
+			double beta = (5.0/8.0 - x * x) / n;
+			for (int k = 0; k < 3; k++) {
+				double sum = 0;
+				for (int i = 0; i < n; i++) {
+					sum += p[3 * ring[i] + k];
+				}
+				res[3 * v + k] = (1 - n * beta) * p[3 * v + k] + beta * sum;
+			}
+		}
+	}
+
+	private void triangles(int from, int to) {
+		for (int f = from; f < to; f++) {
+			int v1 = tri[3 * f];
+			int v2 = tri[3 * f + 1];
+			int v3 = tri[3 * f + 2];
+			int e12 = eBase + he.edge(3 * f);
+			int e23 = eBase + he.edge(3 * f + 1);
+			int e31 = eBase + he.edge(3 * f + 2);
+			int t = 12 * f;
+			nTri[t] = v1;
+			nTri[t + 1] = e12;
+			nTri[t + 2] = e31;
+			nTri[t + 3] = e12;
+			nTri[t + 4] = v2;
+			nTri[t + 5] = e23;
+			nTri[t + 6] = e31;
+			nTri[t + 7] = e23;
+			nTri[t + 8] = v3;
+			nTri[t + 9] = e12;
+			nTri[t + 10] = e23;
+			nTri[t + 11] = e31;
+		}
+	}
+}
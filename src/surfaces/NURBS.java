@@ -1,23 +1,42 @@
 package surfaces;
 
-import org.apache.commons.math3.linear.*;
+import org.apache.commons.math3.geometry.euclidean.threed.Vector3D;
 
 import java.util.ArrayList;
+import java.util.Arrays;
 
 /**
- * This class represents NURBS surfaces in 3D space.
+ * This class represents NURBS surfaces in 3D space. The surface keeps its derived data
+ * and the work arrays of its evaluations, so it must not be used by several threads at once.
  */
 public class NURBS extends Surface3D implements EditableSurface {
 
-     private ArrayList<Double> knotsU;
-     private ArrayList<Double> knotsV;
-     private ArrayList<ArrayList<WPoint3D>> controlNet;
+     private double[] knotsU;
+     private double[] knotsV;
+     private double[] cartesian;
+     private double[] net;
+     private NetPoint[] points;
      private int degreeU;
      private int degreeV;
      private int nU;
      private int nV;
+     private int tessellationSteps = 50;
+     private double chordTolerance = 0;
+     private double angleTolerance = 0;
+     private NURBSNet cachedNet;
+     private BezierPatch[][] patches;
+     private PatchTree tree;
+     private double area;
+     private boolean[] moved;
+     private NURBSGrid grid;
+     private int gridSteps;
+     private double[] gridXYZ;
+     private double[] work;
+     private Point3D[][] gridPoints;
+     private ArrayList<Triangle3D> gridTriangles;
      public static final String U = "U";
      public static final String V = "V";
+     private static final int LOD_MIN_STEPS = 4;
 
      /**
       * Constructs an empty NURBS surface.
@@ -29,15 +48,14 @@ public class NURBS extends Surface3D implements EditableSurface {
           assignLabel();
           this.degreeU = degreeU;
           this.degreeV = degreeV;
-          nU = 0;
-          nV = 0;
-          knotsU = new ArrayList<>();
-          knotsV = new ArrayList<>();
-          controlNet = new ArrayList<>();
+          knotsU = new double[0];
+          knotsV = new double[0];
+          setNet(0, 0, new double[0]);
      }
 
      /**
-      * Constructs a NURBS surface from supplied NURBS data.
+      * Constructs a NURBS surface from supplied NURBS data. The control points are
+      * copied, so changing them afterwards does not change the surface.
       *
       * @param degreeU Degree of the surface along the U-direction.
       * @param degreeV Degree of the surface along the V-direction.
@@ -48,30 +66,46 @@ public class NURBS extends Surface3D implements EditableSurface {
      public NURBS(int degreeU, int degreeV, WPoint3D[][] cP, double[] knotsU, double[] knotsV) {
           instCnt++;
           assignLabel();
-          controlNet = new ArrayList<>(cP.length);
-          this.knotsU = new ArrayList<>();
-          this.knotsV = new ArrayList<>();
           this.degreeU = degreeU;
           this.degreeV = degreeV;
-          for (int i = 0; i < cP.length; i++) {
-               ArrayList<WPoint3D> lC = new ArrayList<>();
-               for (int j = 0; j < cP[0].length; j++) {
-                    lC.add(cP[i][j]);
+          this.knotsU = knotsU.clone();
+          this.knotsV = knotsV.clone();
+          int nV = cP.length == 0 ? 0 : cP[0].length;
+          double[] cartesian = new double[4 * cP.length * nV];
+          for (int i = 0, k = 0; i < cP.length; i++) {
+               for (int j = 0; j < nV; j++, k += 4) {
+                    put(cP[i][j], cP[i][j].getWeight(), cartesian, k);
                }
-               controlNet.add(lC);
           }
-          nU = cP.length;
-          nV = cP[0].length;
-          for (double i : knotsU)
-               this.knotsU.add(i);
-          for (double i : knotsV)
-               this.knotsV.add(i);
+          setNet(cP.length, nV, cartesian);
      }
 
      /**
+      * Constructs a NURBS surface from control points stored as x, y, z and weight, row by
+      * row along U. The arrays are copied.
       *
       * @param degreeU Degree of the surface along the U-direction.
       * @param degreeV Degree of the surface along the V-direction.
+      * @param nU Number of control points along the U-direction.
+      * @param nV Number of control points along the V-direction.
+      * @param points 4 * nU * nV values, x, y, z and weight of each control point.
+      * @param knotsU Knot vector for the U-direction.
+      * @param knotsV Knot vector for the V-direction.
+      */
+     public NURBS(int degreeU, int degreeV, int nU, int nV, double[] points, double[] knotsU, double[] knotsV) {
+          instCnt++;
+          assignLabel();
+          this.degreeU = degreeU;
+          this.degreeV = degreeV;
+          this.knotsU = knotsU.clone();
+          this.knotsV = knotsV.clone();
+          setNet(nU, nV, Arrays.copyOf(points, 4 * nU * nV));
+     }
+
+     /**
+      * Constructs a NURBS surface from lists, which are copied.
+      * @param degreeU Degree of the surface along the U-direction.
+      * @param degreeV Degree of the surface along the V-direction.
       * @param cP 2D Matrix of control points. "Control net"
       * @param knotsU Knot vector for the U-direction.
       * @param knotsV Knot vector for the V-direction.
@@ -81,11 +115,17 @@ public class NURBS extends Surface3D implements EditableSurface {
           assignLabel();
           this.degreeU = degreeU;
           this.degreeV = degreeV;
-          controlNet = cP;
-          this.knotsU = knotsU;
-          this.knotsV = knotsV;
-          nU = cP.size();
-          nV = cP.get(0).size();
+          this.knotsU = toArray(knotsU);
+          this.knotsV = toArray(knotsV);
+          int nV = cP.size() == 0 ? 0 : cP.get(0).size();
+          double[] cartesian = new double[4 * cP.size() * nV];
+          for (int i = 0, k = 0; i < cP.size(); i++) {
+               for (int j = 0; j < nV; j++, k += 4) {
+                    WPoint3D p = cP.get(i).get(j);
+                    put(p, p.getWeight(), cartesian, k);
+               }
+          }
+          setNet(cP.size(), nV, cartesian);
      }
 
      /**
@@ -99,21 +139,81 @@ public class NURBS extends Surface3D implements EditableSurface {
           assignLabel();
           this.degreeU = degreeU;
           this.degreeV = degreeV;
-          controlNet = weightNet(surfaceInterpolation(points));
-          nU = controlNet.size();
-          nV = controlNet.get(0).size();
+          setNet(points.size(), points.get(0).size(), surfaceInterpolation(points));
+     }
+
+     /**
+      * Writes a point with its weight into a net of x, y, z and weight.
+      */
+     private static void put(Point3D p, double w, double[] cartesian, int k) {
+          cartesian[k] = p.getX();
+          cartesian[k + 1] = p.getY();
+          cartesian[k + 2] = p.getZ();
+          cartesian[k + 3] = w;
+     }
+
+     /**
+      * Writes point k of a net of x, y, z and weight in homogeneous form into another net.
+      */
+     static void weigh(double[] cartesian, double[] net, int k) {
+          double w = cartesian[k + 3];
+          net[k] = cartesian[k] * w;
+          net[k + 1] = cartesian[k + 1] * w;
+          net[k + 2] = cartesian[k + 2] * w;
+          net[k + 3] = w;
      }
 
-     private ArrayList<ArrayList<WPoint3D>> weightNet(ArrayList<ArrayList<Point3D>> points) {
-          ArrayList<ArrayList<WPoint3D>> controlNet = new ArrayList<>();
-          for (ArrayList<Point3D> i : points) {
-               ArrayList<WPoint3D> l = new ArrayList<>();
-               for (Point3D j : i) {
-                    l.add(new WPoint3D(j, 1.0));
+     /**
+      * Replaces the control net. The points are kept as given, next to their homogeneous
+      * form, so that a point keeps its coordinates when its weight is 0. Views handed out
+      * for the old net are detached and all derived data is dropped.
+      * @param cartesian x, y, z and weight of every control point, row by row along U.
+      */
+     private void setNet(int nU, int nV, double[] cartesian) {
+          if (points != null) {
+               for (NetPoint p : points) {
+                    if (p != null) p.detach();
                }
-               controlNet.add(l);
           }
-          return controlNet;
+          this.nU = nU;
+          this.nV = nV;
+          this.cartesian = cartesian;
+          net = new double[cartesian.length];
+          for (int k = 0; k < net.length; k += 4) {
+               weigh(cartesian, net, k);
+          }
+          points = null;
+          moved = new boolean[nU * nV];
+          cachedNet = null;
+          patches = null;
+          tree = null;
+          area = Double.NaN;
+          grid = null;
+     }
+
+     /**
+      * Called by the views of the control net after they have written a new value.
+      * @param index Index of the control point, i * nV + j.
+      */
+     void pointMoved(int index) {
+          moved[index] = true;
+          patches = null;
+          tree = null;
+          area = Double.NaN;
+     }
+
+     /**
+      * Returns the view of control point (i, j), made on first use.
+      */
+     private NetPoint point(int i, int j) {
+          if (points == null) {
+               points = new NetPoint[nU * nV];
+          }
+          int k = i * nV + j;
+          if (points[k] == null) {
+               points[k] = new NetPoint(this, cartesian, net, k);
+          }
+          return points[k];
      }
 
      /**
@@ -121,10 +221,11 @@ public class NURBS extends Surface3D implements EditableSurface {
       * @return The control net.
       */
      public ArrayList<ArrayList<Point3D>> get() {
-          ArrayList<ArrayList<Point3D>> cN = new ArrayList<>();
-          for (ArrayList<WPoint3D> i : controlNet) {
-               ArrayList<Point3D> j = new ArrayList<>();
-               j.addAll(i);
+          ArrayList<ArrayList<Point3D>> cN = new ArrayList<>(nU);
+          for (int i = 0; i < nU; i++) {
+               ArrayList<Point3D> j = new ArrayList<>(nV);
+               for (int k = 0; k < nV; k++)
+                    j.add(point(i, k));
                cN.add(j);
           }
           return cN;
@@ -137,49 +238,101 @@ public class NURBS extends Surface3D implements EditableSurface {
       */
      public Point3D getClosest(Point3D p) {
 
-          Point3D close = null;
+          int close = -1;
           double maxDistance = Double.MAX_VALUE;
-          double distance;
-
-          for (ArrayList<WPoint3D> i : controlNet) {
-               for (Point3D j : i) {
-                    if ((distance = j.dist(p)) < maxDistance) {
-                         close = j;
-                         maxDistance = distance;
-                    }
+          double px = p.getX();
+          double py = p.getY();
+          double pz = p.getZ();
+
+          for (int k = 0; k < nU * nV; k++) {
+               double dx = cartesian[4 * k] - px;
+               double dy = cartesian[4 * k + 1] - py;
+               double dz = cartesian[4 * k + 2] - pz;
+               double distance = Math.sqrt(dx * dx + dy * dy + dz * dz);
+               if (distance < maxDistance) {
+                    close = k;
+                    maxDistance = distance;
                }
           }
-          return close;
+          return close < 0 ? null : point(close / nV, close % nV);
      }
 
      /**
-      * Returns the points of the control net in a single ArrayList of Point3Ds.
+      * Returns the points of the control net in a single ArrayList of Point3Ds. Setting
+      * their coordinates moves the control points.
       * @return Arraylist of control points.
       */
      @Override
      public ArrayList<Point3D> vertices() {
-          ArrayList<Point3D> v = new ArrayList<>();
-          for (ArrayList<WPoint3D> i : controlNet)
-               for (Point3D j : i)
-                    v.add(j);
+          ArrayList<Point3D> v = new ArrayList<>(nU * nV);
+          for (int i = 0; i < nU; i++)
+               for (int j = 0; j < nV; j++)
+                    v.add(point(i, j));
           return v;
      }
 
      /**
-      * Returns the control net.
+      * Returns the control net. Setting the coordinates or weights of the points moves the
+      * control points; the lists themselves are new on every call.
       * @return Control net.
       */
      public ArrayList<ArrayList<WPoint3D>> getControlNet() {
-          return controlNet;
+          ArrayList<ArrayList<WPoint3D>> cN = new ArrayList<>(nU);
+          for (int i = 0; i < nU; i++) {
+               ArrayList<WPoint3D> row = new ArrayList<>(nV);
+               for (int j = 0; j < nV; j++)
+                    row.add(point(i, j));
+               cN.add(row);
+          }
+          return cN;
+     }
+
+     /**
+      * Copies control point (i, j) into an array as x, y, z and weight.
+      * @param i Index along U.
+      * @param j Index along V.
+      * @param out Array receiving at least 4 values.
+      */
+     public void getControlPoint(int i, int j, double[] out) {
+          System.arraycopy(cartesian, 4 * (i * nV + j), out, 0, 4);
+     }
+
+     /**
+      * Moves control point (i, j) and sets its weight.
+      * @param i Index along U.
+      * @param j Index along V.
+      * @param x New x-coordinate.
+      * @param y New y-coordinate.
+      * @param z New z-coordinate.
+      * @param w New weight.
+      */
+     public void setControlPoint(int i, int j, double x, double y, double z, double w) {
+          int k = i * nV + j;
+          cartesian[4 * k] = x;
+          cartesian[4 * k + 1] = y;
+          cartesian[4 * k + 2] = z;
+          cartesian[4 * k + 3] = w;
+          weigh(cartesian, net, 4 * k);
+          if (points != null && points[k] != null) {
+               points[k].load();
+          }
+          pointMoved(k);
      }
 
      /**
-      * Returns the surface area of the nurbs curve.
+      * Returns the surface area of the nurbs surface, integrated with a Gauss-Legendre rule
+      * per pair of knot spans. The spans are integrated in parallel and the result is
+      * cached until the control net or the knots change.
       * @return Area.
       */
      @Override
      public double surfaceArea() {
-          return 0;
+          if (nU == 0) return 0;
+          NURBSNet net = flatNet();
+          if (Double.isNaN(area)) {
+               area = net.surfaceArea(true);
+          }
+          return area;
      }
 
      /**
@@ -189,24 +342,25 @@ public class NURBS extends Surface3D implements EditableSurface {
       */
      @Override
      public void addVertex(Point3D p, String instruct) {
-          if (controlNet.size() == 0) {
-               ArrayList<WPoint3D> curve = new ArrayList<>();
-               curve.add(new WPoint3D(p, 1.0));
-               controlNet.add(curve);
+          if (nU == 0) {
+               double[] cartesian = new double[4];
+               put(p, 1.0, cartesian, 0);
+               setNet(1, 1, cartesian);
           } else if (instruct.equals("U")) {
-               ArrayList<WPoint3D> newU = new ArrayList<>();
-               for (int i = 0; i < nV; i++) {
-                    newU.add(new WPoint3D(p, 1.0));
+               double[] cartesian = Arrays.copyOf(this.cartesian, 4 * (nU + 1) * nV);
+               for (int j = 0; j < nV; j++) {
+                    put(p, 1.0, cartesian, 4 * (nU * nV + j));
                }
-               controlNet.add(newU);
                addKnot(1, 0.5);
-               nU++;
+               setNet(nU + 1, nV, cartesian);
           } else {
-               for (ArrayList<WPoint3D> i : controlNet) {
-                    i.add(new WPoint3D(p, 1.0));
+               double[] cartesian = new double[4 * nU * (nV + 1)];
+               for (int i = 0; i < nU; i++) {
+                    System.arraycopy(this.cartesian, 4 * i * nV, cartesian, 4 * i * (nV + 1), 4 * nV);
+                    put(p, 1.0, cartesian, 4 * (i * (nV + 1) + nV));
                }
                addKnot(2, 0.5);
-               nV++;
+               setNet(nU, nV + 1, cartesian);
           }
      }
 
@@ -220,28 +374,31 @@ public class NURBS extends Surface3D implements EditableSurface {
      @Override
      public void add2Vertices(Point3D p1, Point3D p2, String instruct, double w) {
 
-          if (controlNet.size() == 0) {
-               initiateNurbs(new WPoint3D(p1, w), new WPoint3D(p2, w));
+          double[] a = {p1.getX(), p1.getY(), p1.getZ(), w};
+          double[] b = {p2.getX(), p2.getY(), p2.getZ(), w};
+          if (nU == 0) {
+               initiateNurbs(a, b);
           } else if (instruct.equals("U")) {
-               ArrayList<WPoint3D> newU = new ArrayList<>();
-               newU.add(new WPoint3D(p1, w));
-               double spacing = 1 / (double) nU;
-               for (int i = 0; i < nU - 1; i++, spacing += spacing) {
-                    newU.add(lerp(new WPoint3D(p1, w), new WPoint3D(p2, w), spacing));
+               double[] cartesian = Arrays.copyOf(this.cartesian, 4 * (nU + 1) * nV);
+               double spacing = 1 / (double) (nV - 1);
+               double startSpacing = 0;
+               for (int j = 0; j < nV - 1; j++, startSpacing += spacing) {
+                    lerp(a, b, startSpacing, cartesian, 4 * (nU * nV + j));
                }
-               newU.add(new WPoint3D(p2, w));
-               controlNet.add(newU);
+               System.arraycopy(b, 0, cartesian, 4 * (nU * nV + nV - 1), 4);
                addKnot(1, 0.5);
-               nU++;
+               setNet(nU + 1, nV, cartesian);
           } else {
+               double[] cartesian = new double[4 * nU * (nV + 1)];
                double spacing = 1 / (double) nV;
                double startSpacing = 0;
-               for (ArrayList<WPoint3D> i : controlNet) {
-                    i.add(lerp(new WPoint3D(p1, w), new WPoint3D(p2, w), startSpacing));
+               for (int i = 0; i < nU; i++) {
+                    System.arraycopy(this.cartesian, 4 * i * nV, cartesian, 4 * i * (nV + 1), 4 * nV);
+                    lerp(a, b, startSpacing, cartesian, 4 * (i * (nV + 1) + nV));
                     startSpacing += spacing;
                }
                addKnot(2, 0.5);
-               nV++;
+               setNet(nU, nV + 1, cartesian);
           }
      }
 
@@ -291,204 +448,428 @@ public class NURBS extends Surface3D implements EditableSurface {
      }
 
      /**
-      * Returns the knot vector along the U-direction.
+      * Returns a copy of the knot vector along the U-direction as a list.
       * @return Knot vector (U).
       */
      public ArrayList<Double> getKnotsU() {
-          return knotsU;
+          return toList(knotsU);
      }
 
      /**
-      * Returns the knot vector along the V-direction.
+      * Returns a copy of the knot vector along the V-direction as a list.
       * @return Knot vector (V).
       */
      public ArrayList<Double> getKnotsV() {
-          return knotsV;
+          return toList(knotsV);
+     }
+
+     /**
+      * Returns a copy of the knot vector along the U-direction.
+      * @return Knot vector (U).
+      */
+     public double[] getKnotVectorU() {
+          return knotsU.clone();
+     }
+
+     /**
+      * Returns a copy of the knot vector along the V-direction.
+      * @return Knot vector (V).
+      */
+     public double[] getKnotVectorV() {
+          return knotsV.clone();
      }
 
      /**
-      * Triangulates the surface and returns an arraylist of triangles.
+      * Triangulates the surface and returns an arraylist of triangles. Without tolerances
+      * the surface is sampled on a regular grid, otherwise it is tessellated adaptively.
+      * The grid triangles are reused: after control points have moved the same list is
+      * returned with its points updated.
       * @return Arraylist of triangles.
       */
      @Override
      public ArrayList<Triangle3D> triangulate() {
 
-          if (controlNet.size() == 0) return new ArrayList<>();
-          ArrayList<Triangle3D> triangles = new ArrayList<>();
-          Point3D[][] v = getVertices(50);
-          int size = v.length;
+          if (nU == 0) return new ArrayList<>();
+          if (chordTolerance > 0 || angleTolerance > 0) {
+               IndexedMesh mesh = tessellate(chordTolerance, angleTolerance);
+               return mesh.triangulate(mesh.vertices());
+          }
+          return gridTriangulation();
+     }
 
-          for (int i = 0; i < size - 1; i++) {
-               for (int j = 0; j < size - 1; j++) {
-                    triangles.add(new Triangle3D(v[i][j], v[i + 1][j], v[i][j + 1]));
-                    triangles.add(new Triangle3D(v[i + 1][j], v[i][j + 1], v[i + 1][j + 1]));
+     /**
+      * Returns the number of levels of detail. The regular grid is coarsened by halving the
+      * number of steps down to LOD_MIN_STEPS; the adaptive tessellation has only level 0.
+      * @return the number of levels.
+      */
+     @Override
+     public int lodLevels() {
+          if (nU == 0 || chordTolerance > 0 || angleTolerance > 0) return 1;
+          int levels = 1;
+          while ((tessellationSteps >> levels) >= LOD_MIN_STEPS) levels++;
+          return levels;
+     }
+
+     /**
+      * Triangulates a level of detail. Level 0 is the triangulation of triangulate(); the
+      * coarser levels sample a regular grid of tessellationSteps / 2^level steps, which is
+      * built anew on every call.
+      * @param level Level, 0 for the full triangulation.
+      * @return Arraylist of triangles.
+      */
+     @Override
+     public ArrayList<Triangle3D> triangulate(int level) {
+          int l = Math.min(level, lodLevels() - 1);
+          if (l <= 0) return triangulate();
+          NURBSNet net = flatNet();
+          int steps = tessellationSteps >> l;
+          double[] u = NURBSGrid.steps(knotsU[nU + 1], steps);
+          double[] v = NURBSGrid.steps(knotsV[nV + 1], steps);
+          double[] xyz = new double[3 * u.length * v.length];
+          new NURBSGrid(degreeU, degreeV, net.knotsU, net.knotsV, nU, nV, net.net, u, v).evaluate(xyz);
+          return gridFaces(getVertices(xyz, u.length, v.length));
+     }
+
+     /**
+      * Returns the triangles of the regular grid. The grid is kept between calls: when
+      * only control points have moved, the knot-span tiles they influence are evaluated
+      * again and their points are updated in place, so the same list is returned and
+      * whoever draws it sees the change.
+      */
+     private ArrayList<Triangle3D> gridTriangulation() {
+          NURBSNet net = flatNet();
+          if (grid == null || gridSteps != tessellationSteps) {
+               double[] u = NURBSGrid.steps(knotsU[nU + 1], tessellationSteps);
+               double[] v = NURBSGrid.steps(knotsV[nV + 1], tessellationSteps);
+               grid = new NURBSGrid(degreeU, degreeV, net.knotsU, net.knotsV, nU, nV, net.net, u, v);
+               gridSteps = tessellationSteps;
+               gridXYZ = new double[3 * u.length * v.length];
+               grid.evaluate(gridXYZ);
+               Arrays.fill(moved, false);
+               gridPoints = getVertices(gridXYZ, u.length, v.length);
+               gridTriangles = gridFaces(gridPoints);
+               return gridTriangles;
+          }
+
+          //control point (i, j) only acts on the knot spans i to i + degreeU and j to j + degreeV
+          boolean[] dirty = new boolean[nU * nV];
+          boolean any = false;
+          for (int i = 0; i < nU; i++) {
+               for (int j = 0; j < nV; j++) {
+                    if (moved[i * nV + j]) {
+                         moved[i * nV + j] = false;
+                         any = true;
+                         for (int k = i; k <= i + degreeU && k < nU; k++) {
+                              for (int l = j; l <= j + degreeV && l < nV; l++) {
+                                   dirty[k * nV + l] = true;
+                              }
+                         }
+                    }
+               }
+          }
+          if (!any) return gridTriangles;
+
+          int rows = grid.rows();
+          int cols = grid.columns();
+          for (int r0 = 0; r0 < rows; ) {
+               int k = grid.rowSpan(r0);
+               int r1 = r0;
+               while (r1 < rows && grid.rowSpan(r1) == k) r1++;
+               for (int c0 = 0; c0 < cols; ) {
+                    int l = grid.columnSpan(c0);
+                    int c1 = c0;
+                    while (c1 < cols && grid.columnSpan(c1) == l) c1++;
+                    if (dirty[k * nV + l]) {
+                         grid.evaluateBlock(r0, r1, c0, c1, gridXYZ);
+                         for (int i = r0; i < r1; i++) {
+                              for (int j = c0, o = 3 * (i * cols + c0); j < c1; j++, o += 3) {
+                                   Point3D p = gridPoints[i][j];
+                                   p.setX(gridXYZ[o]);
+                                   p.setY(gridXYZ[o + 1]);
+                                   p.setZ(gridXYZ[o + 2]);
+                              }
+                         }
+                    }
+                    c0 = c1;
                }
+               r0 = r1;
           }
-          return triangles;
+          return gridTriangles;
      }
 
-     private int findKnotSpanU(double u) {
+     /**
+      * Tessellates the surface adaptively. The parameter domain is refined per knot span
+      * until the triangles are within both tolerances; flat regions get few triangles.
+      * The distance is checked at the midpoints of the triangle sides and at a few points
+      * inside every triangle, so between those points it may be exceeded slightly.
+      * @param chordTolerance Maximum distance between the surface and its triangles, 0 to disable.
+      * @param angleTolerance Maximum deviation of the normals within a triangle pair in radians, 0 to disable.
+      * @return Crack-free indexed triangle mesh, empty if there is no control net.
+      */
+     public IndexedMesh tessellate(double chordTolerance, double angleTolerance) {
+          if (nU == 0) return new IndexedMesh(new double[0], 0, new int[0], 0);
+          return new NURBSTessellator(bezierPatches(), flatNet()).tessellate(chordTolerance, angleTolerance);
+     }
 
-          if (u == knotsU.get(nU + 1)) return nU - 1;
-          int low = degreeU;
-          int high = nU + 1;
-          int mid = (low + high) / 2;
+     /**
+      * Sets the number of grid intervals per direction used by triangulate.
+      * @param steps Number of intervals, at least 1.
+      */
+     public void setTessellationSteps(int steps) {
+          if (steps < 1) throw new IllegalArgumentException("At least one step is needed: " + steps);
+          tessellationSteps = steps;
+     }
 
-          while (u < knotsU.get(mid) || u >= knotsU.get(mid + 1)) {
-               if (u < knotsU.get(mid))
-                    high = mid;
-               else
-                    low = mid;
-               mid = (low + high) / 2;
-          }
-          return mid;
+     /**
+      * Returns the number of grid intervals per direction used by triangulate.
+      * @return Number of intervals.
+      */
+     public int getTessellationSteps() {
+          return tessellationSteps;
+     }
+
+     /**
+      * Makes triangulate tessellate adaptively with the given tolerances, checked as in
+      * tessellate. Setting both to 0 returns to the regular grid.
+      * @param chordTolerance Maximum distance between the surface and its triangles, 0 to disable.
+      * @param angleTolerance Maximum normal deviation in radians, 0 to disable.
+      */
+     public void setTessellationTolerance(double chordTolerance, double angleTolerance) {
+          this.chordTolerance = chordTolerance;
+          this.angleTolerance = angleTolerance;
      }
 
-     private int findKnotSpanV(double v) {
+     /**
+      * Evaluates the surface at a parameter pair through its cached Bezier patches.
+      * @param u Parameter along U, inside the domain.
+      * @param v Parameter along V, inside the domain.
+      * @return Point on the surface.
+      */
+     public Point3D surfacePoint(double u, double v) {
+          BezierPatch[][] p = bezierPatches();
+          int a = patchIndex(p, u, true);
+          int b = patchIndex(p, v, false);
+          double[] xyz = new double[3];
+          p[a][b].evaluate(u, v, xyz, 0);
+          return new Point3D(xyz[0], xyz[1], xyz[2]);
+     }
 
-          if (v == knotsV.get(nV + 1)) return nV - 1;
-          int low = degreeV;
-          int high = nV + 1;
-          int mid = (low + high) / 2;
+     /**
+      * Returns the parameters of the point on the surface closest to p. Only the Bezier
+      * patches whose bounding boxes could hold a closer point than found so far are
+      * searched, each by Newton iteration from its nearest sample.
+      * @param p Point to project onto the surface.
+      * @return u and v of the closest point, or null if there is no control net.
+      */
+     public double[] closestParameters(Point3D p) {
+          if (nU == 0) return null;
+          double[] r = new double[6];
+          patchTree().closest(p.getX(), p.getY(), p.getZ(), r);
+          return new double[]{r[0], r[1]};
+     }
 
-          while (v < knotsV.get(mid) || v >= knotsV.get(mid + 1)) {
-               if (v < knotsV.get(mid))
+     /**
+      * Returns the point on the surface closest to p.
+      * @param p Point to project onto the surface.
+      * @return Closest point, or null if there is no control net.
+      */
+     public Point3D closestPoint(Point3D p) {
+          if (nU == 0) return null;
+          double[] r = new double[6];
+          patchTree().closest(p.getX(), p.getY(), p.getZ(), r);
+          return new Point3D(r[2], r[3], r[4]);
+     }
+
+     /**
+      * Intersects a ray with the surface, for picking. The Bezier patches whose bounding
+      * boxes the ray passes through are visited front to back, each by Newton iteration
+      * from the sample triangles the ray hits.
+      * @param origin Start of the ray.
+      * @param direction Direction of the ray, not necessarily of unit length.
+      * @return u, v and the ray parameter t of the first intersection, so that the point
+      * is origin + t * direction, or null if the ray misses.
+      */
+     public double[] intersect(Point3D origin, Vector3D direction) {
+          if (nU == 0) return null;
+          double[] r = new double[3];
+          if (!patchTree().intersect(origin.getX(), origin.getY(), origin.getZ(),
+                    direction.getX(), direction.getY(), direction.getZ(), r)) {
+               return null;
+          }
+          return r;
+     }
+
+     private PatchTree patchTree() {
+          BezierPatch[][] p = bezierPatches();
+          if (tree == null) {
+               tree = new PatchTree(p);
+          }
+          return tree;
+     }
+
+     private static int patchIndex(BezierPatch[][] p, double t, boolean alongU) {
+          int low = 0;
+          int high = (alongU ? p.length : p[0].length) - 1;
+          while (low < high) {
+               int mid = (low + high) / 2;
+               double end = alongU ? p[mid][0].getU1() : p[0][mid].getV1();
+               if (t < end)
                     high = mid;
                else
-                    low = mid;
-               mid = (low + high) / 2;
+                    low = mid + 1;
           }
-          return mid;
+          return low;
      }
 
-     private double[] basisFunctionsU(double u, int index) {
-
-          double[] bF = new double[degreeU + 1];
-          double[] left = new double[degreeU + 1];
-          double[] right = new double[degreeU + 1];
-          bF[0] = 1;
+     /**
+      * Returns the Bezier decomposition of the surface. The patches are cached until the
+      * control net, its weights or the knots change.
+      * @return Rational Bezier patches indexed by U-span and V-span.
+      */
+     public BezierPatch[][] bezierPatches() {
+          NURBSNet net = flatNet();
+          if (patches == null) {
+               patches = net.bezierPatches();
+          }
+          return patches;
+     }
 
-          for (int i = 1; i <= degreeU; i++) {
-               left[i] = u - knotsU.get(index + 1 - i);
-               right[i] = knotsU.get(index + i) - u;
-               double saved = 0.0;
+     /**
+      * Evaluates the surface and its first partial derivatives.
+      * @param u Parameter along U, inside the domain.
+      * @param v Parameter along V, inside the domain.
+      * @return The point S, followed by the derivatives S_u and S_v.
+      */
+     public Vector3D[] derivatives(double u, double v) {
+          double[] d = work();
+          flatNet().derivatives(u, v, d, d);
+          return new Vector3D[]{new Vector3D(d[0], d[1], d[2]), new Vector3D(d[3], d[4], d[5]),
+                                new Vector3D(d[6], d[7], d[8])};
+     }
 
-               for (int j = 0; j < i; j++) {
-                    double temp = bF[j] / (right[j + 1] + left[i - j]);
-                    bF[j] = saved + right[j + 1] * temp;
-                    saved = left[i - j] * temp;
-               }
-               bF[i] = saved;
+     /**
+      * Returns the unit normal S_u x S_v of the surface.
+      * @param u Parameter along U, inside the domain.
+      * @param v Parameter along V, inside the domain.
+      * @return The normal, or the zero vector where the surface is degenerate.
+      */
+     public Vector3D normal(double u, double v) {
+          double[] n = work();
+          if (!flatNet().normal(u, v, n, n, 0)) {
+               return Vector3D.ZERO;
           }
-          return bF;
+          return new Vector3D(n[0], n[1], n[2]);
      }
 
-     private double[] basisFunctionsV(double v, int index) {
-
-          double[] bF = new double[degreeV + 1];
-          double[] left = new double[degreeV + 1];
-          double[] right = new double[degreeV + 1];
-          bF[0] = 1;
+     /**
+      * Returns the work array of derivatives and normal, made on first use; its size only
+      * depends on the degrees.
+      */
+     private double[] work() {
+          if (work == null) {
+               work = new double[flatNet().workSize()];
+          }
+          return work;
+     }
 
-          for (int i = 1; i <= degreeV; i++) {
-               left[i] = v - knotsV.get(index + 1 - i);
-               right[i] = knotsV.get(index + i) - v;
-               double saved = 0.0;
+     /**
+      * Returns the surface as a NURBSNet, which shares the arrays of this surface.
+      */
+     private NURBSNet flatNet() {
+          if (cachedNet == null) {
+               cachedNet = new NURBSNet(degreeU, degreeV, knotsU, knotsV, nU, nV, net);
+          }
+          return cachedNet;
+     }
 
-               for (int j = 0; j < i; j++) {
-                    double temp = bF[j] / (right[j + 1] + left[i - j]);
-                    bF[j] = saved + right[j + 1] * temp;
-                    saved = left[i - j] * temp;
-               }
-               bF[i] = saved;
-          }
-          return bF;
-     }
-     
-     private Point3D surfacePoint(double u, double v) {
-          
-          int uSpan = findKnotSpanU(u);
-          int vSpan = findKnotSpanV(v);
-          double[] bFU = basisFunctionsU(u, uSpan);
-          double[] bFV = basisFunctionsV(v, vSpan);
-
-          WPoint3D rP = new WPoint3D(0, 0, 0, 0);
-          WPoint3D[] temp = new WPoint3D[degreeU + 1];
-
-          for (int i = 0; i < degreeU + 1; i++) {
-               temp[i] = new WPoint3D(0, 0, 0, 0);
-               for (int j = 0; j < degreeV + 1; j++) {
-                    WPoint3D p = controlNet.get(uSpan - degreeU + i).get(vSpan - degreeV + j);
-                    double w = p.getWeight();
-                    p = p.multiply(w);
-                    p.setWeight(w);
-                    temp[i] = temp[i].add(p.multiply(bFV[j]));
+     /**
+      * Inserts a knot without changing the shape of the surface, which adds one row or
+      * column of control points. Knots already at full multiplicity are not inserted.
+      * @param direction Knot vector to insert into, U or V.
+      * @param t Knot inside the parameter domain.
+      */
+     public void insertKnot(String direction, double t) {
+          if (nU == 0) return;
+          NURBSNet net = flatNet();
+          NURBSNet r = net.insertKnot(direction.equals(U), t, 1);
+          if (r == net) return;
+          //the same insertion on x, y, z and weight places the points of weight 0
+          double[] cartesian = new NURBSNet(degreeU, degreeV, knotsU, knotsV, nU, nV, this.cartesian)
+                    .insertKnot(direction.equals(U), t, 1).net;
+          for (int k = 0; k < cartesian.length; k += 4) {
+               double w = r.net[k + 3];
+               if (w != 0) {
+                    cartesian[k] = r.net[k] / w;
+                    cartesian[k + 1] = r.net[k + 1] / w;
+                    cartesian[k + 2] = r.net[k + 2] / w;
                }
           }
-          for (int i = 0; i < temp.length; i++) {
-               rP = rP.add(temp[i].multiply(bFU[i]));
-          }
-          return rP.convert();
+          knotsU = r.knotsU;
+          knotsV = r.knotsV;
+          setNet(r.nU, r.nV, cartesian);
      }
 
-     private Point3D[][] getVertices(int steps) {
-          double u = 0;
-          double v = 0;
-          double dU = knotsU.get(nU + 1) / steps;
-          double dV = knotsV.get(nV + 1) / steps;
-          steps++;
-          Point3D[][] vertices = new Point3D[steps][steps];
+     private static Point3D[][] getVertices(double[] xyz, int rows, int cols) {
+          Point3D[][] vertices = new Point3D[rows][cols];
 
-          for (int i = 0; i < steps; i++) {
-               for (int j = 0; j < steps; j++) {
-                    vertices[i][j] = (surfacePoint(u, v));
-                    v += dV;
-                    v = Math.round(v * 1000000.0) / 1000000.0;
+          for (int i = 0, k = 0; i < rows; i++) {
+               for (int j = 0; j < cols; j++, k += 3) {
+                    vertices[i][j] = new Point3D(xyz[k], xyz[k + 1], xyz[k + 2]);
                }
-               u += dU;
-               u = Math.round(u * 1000000.0) / 1000000.0;
-               v = 0.0;
           }
           return vertices;
      }
 
-     private WPoint3D[][] wPoints(ArrayList<ArrayList<WPoint3D>> controlNet, int uSpan, int vSpan) {
-
-          WPoint3D[][] pW = new WPoint3D[degreeU + 1][degreeV + 1];
+     private static ArrayList<Triangle3D> gridFaces(Point3D[][] points) {
+          ArrayList<Triangle3D> faces = new ArrayList<>();
+          int size = points.length;
 
-          for (int i = 0; i <= degreeU; i++) {
-               for (int j = 0; j <= degreeV; j++) {
-                    WPoint3D p = controlNet.get(uSpan - degreeU + i).get(vSpan - degreeV + j);
-                    double w = p.getWeight();
-                    p = p.multiply(w);
-                    p.setWeight(w);
-                    pW[i][j] = p;
+          for (int i = 0; i < size - 1; i++) {
+               for (int j = 0; j < size - 1; j++) {
+                    faces.add(new Triangle3D(points[i][j], points[i + 1][j], points[i][j + 1]));
+                    faces.add(new Triangle3D(points[i + 1][j], points[i][j + 1], points[i + 1][j + 1]));
                }
           }
-          return pW;
+          return faces;
+     }
+
+     private static double[] toArray(ArrayList<Double> knots) {
+          double[] k = new double[knots.size()];
+          for (int i = 0; i < k.length; i++) {
+               k[i] = knots.get(i);
+          }
+          return k;
+     }
+
+     private static ArrayList<Double> toList(double[] knots) {
+          ArrayList<Double> k = new ArrayList<>(knots.length);
+          for (double t : knots) {
+               k.add(t);
+          }
+          return k;
      }
 
      private void scaleKnotsU(double factor) {
           for (int i = degreeU + 1; i < nU; i++) {
-               knotsU.set(i, knotsU.get(i) * factor);
+               knotsU[i] *= factor;
           }
      }
 
      private void scaleKnotsV(double factor) {
           for (int i = degreeV + 1; i < nV; i++) {
-               knotsV.set(i, knotsV.get(i) * factor);
+               knotsV[i] *= factor;
           }
      }
 
      private void makeUniform() {
           double startU = 1 / (double) (nU - (degreeU + 1));
           for (int i = degreeU + 1; i < nU; i++) {
-               knotsU.set(i, startU);
+               knotsU[i] = startU;
                startU += startU;
           }
           double startV = 1 / (double) (nV - (degreeV + 1));
           for (int i = degreeV + 1; i < nV; i++) {
-               knotsV.set(i, startV);
+               knotsV[i] = startV;
                startV += startV;
           }
      }
@@ -497,156 +878,106 @@ public class NURBS extends Surface3D implements EditableSurface {
           //spacing should be a
           int d;
           if (direction == 1) {
-               d = knotsU.size() - 2 * degreeU;
+               d = knotsU.length - 2 * degreeU;
                double factor = (d - 1) / (double) d;
                scaleKnotsU(factor);
-               knotsU.add(nU, 1 * factor);
+               knotsU = insert(knotsU, nU, 1 * factor);
           } else {
-               d = knotsV.size() - 2 * degreeV;
+               d = knotsV.length - 2 * degreeV;
                double factor = (d - 1) / (double) d;
                scaleKnotsV(factor);
-               knotsV.add(nV, 1 * factor);
+               knotsV = insert(knotsV, nV, 1 * factor);
           }
      }
 
-     private WPoint3D lerp(WPoint3D p1, WPoint3D p2, double spacing) {
-          return p1.add(p2.subtract(p1).multiply(spacing));
+     private static double[] insert(double[] knots, int index, double knot) {
+          double[] k = new double[knots.length + 1];
+          System.arraycopy(knots, 0, k, 0, index);
+          k[index] = knot;
+          System.arraycopy(knots, index, k, index + 1, knots.length - index);
+          return k;
      }
 
-     private void initiateNurbs(WPoint3D p1, WPoint3D p3) {
-          nU = degreeU + 1;
-          nV = degreeV + 1;
-          for (int j = 0; j < nU; j++) {
-               knotsU.add(0.0);
-          }
-          for (int j = 0; j < nU; j++) {
-               knotsU.add(1.0);
-          }
-          for (int j = 0; j < nV; j++) {
-               knotsV.add(0.0);
-          }
-          for (int j = 0; j < nV; j++) {
-               knotsV.add(1.0);
+     /**
+      * Writes p1 + (p2 - p1) * spacing, with x, y, z and weight interpolated alike, into out.
+      */
+     private static void lerp(double[] p1, double[] p2, double spacing, double[] out, int k) {
+          for (int i = 0; i < 4; i++) {
+               out[k + i] = p1[i] + (p2[i] - p1[i]) * spacing;
           }
-          for (int i = 0; i < nU; i++)
-               controlNet.add(new ArrayList<>());
+     }
 
-          WPoint3D p2 = new WPoint3D(p1.getX(), p1.getY(), p3.getZ(), p1.getWeight());
-          WPoint3D p4 = new WPoint3D(p3.getX(), p3.getY(), p1.getZ(), p2.getWeight());
+     private void initiateNurbs(double[] p1, double[] p3) {
+          int nU = degreeU + 1;
+          int nV = degreeV + 1;
+          knotsU = new double[2 * nU];
+          knotsV = new double[2 * nV];
+          Arrays.fill(knotsU, nU, 2 * nU, 1.0);
+          Arrays.fill(knotsV, nV, 2 * nV, 1.0);
+          double[] cartesian = new double[4 * nU * nV];
+
+          double[] p2 = {p1[0], p1[1], p3[2], p1[3]};
+          double[] p4 = {p3[0], p3[1], p1[2], p2[3]};
           double spacing = 1 / (double) (nU-1);
           double startSpacing = 0;
-          for (ArrayList<WPoint3D> i : controlNet) {
-               i.add(lerp(p1, p2, startSpacing));
+          for (int i = 0; i < nU; i++) {
+               lerp(p1, p2, startSpacing, cartesian, 4 * i * nV);
                startSpacing += spacing;
           }
 
-          WPoint3D[] left = new WPoint3D[nV];
-          WPoint3D[] right = new WPoint3D[nV];
+          double[][] left = new double[nV][4];
+          double[][] right = new double[nV][4];
           spacing = 1 / (double) (nV-1);
           startSpacing = spacing;
           for (int i = 0; i < nV; i++, startSpacing += spacing) {
-               left[i] = lerp(p2, p3, startSpacing);
+               lerp(p2, p3, startSpacing, left[i], 0);
           }
           startSpacing = spacing;
           for (int i = 0; i < nV; i++, startSpacing += spacing) {
-               right[i] = lerp(p1, p4, startSpacing);
+               lerp(p1, p4, startSpacing, right[i], 0);
           }
           spacing = 1 / (double) (nU-1);
           for (int i = 0; i < nV - 1; i++) {
                startSpacing = 0;
                for (int j = 0; j < nU; j++, startSpacing += spacing) {
-                    controlNet.get(j).add(lerp(right[i], left[i], startSpacing));
+                    lerp(right[i], left[i], startSpacing, cartesian, 4 * (j * nV + i + 1));
                }
           }
-     }
-
-     private int findKnotSpan(double u, ArrayList<Double> knots, int degree) {
-
-          int n = knots.size() - degree - 1;
-          if (u == knots.get(n + 1)) return n - 1;
-          int low = degree;
-          int high = n + 1;
-          int mid = (low + high) / 2;
-
-          while (u < knots.get(mid) || u >= knots.get(mid + 1)) {
-               if (u < knots.get(mid))
-                    high = mid;
-               else
-                    low = mid;
-               mid = (low + high) / 2;
-          }
-          return mid;
-     }
-
-     private double[] basisFunctions(ArrayList<Double> knots, double u, int index, int degree, int n) {
-          double[] bF = new double[degree + 1];
-          double[] left = new double[degree + 1];
-          double[] right = new double[degree + 1];
-          bF[0] = 1.0;
-
-          for (int i = 1; i <= degree; i++) {
-               left[i] = u - knots.get(index + 1 - i);
-               right[i] = knots.get(index + i) - u;
-               double saved = 0.0;
-
-               for (int j = 0; j < i; j++) {
-                    double temp = bF[j] / (right[j + 1] + left[i - j]);
-                    bF[j] = saved + right[j + 1] * temp;
-                    saved = left[i - j] * temp;
-                    saved = Math.round(saved * 1000000)/1000000.0;
-               }
-               bF[i] = saved;
-          }
-          double[] N = new double[n];
-          for (int i = index - degree; i < index + 1; i++) {
-               N[i] = bF[i - index + degree];
-          }
-          return N;
+          setNet(nU, nV, cartesian);
      }
 
      private double[] chordLengthPara(ArrayList<Point3D> points) {
-          double length = 0;
           int pSize = points.size();
           double[] paras = new double[pSize];
-          for (int i = 0; i < pSize - 1; i++) {
-               length += points.get(i).dist(points.get(i + 1));
-          }
-          if (length == 0.0) {
-               double spacing = 1/(double) pSize;
-               for (int i = 1; i < pSize-1; i++) {
-                    paras[i] = spacing;
-                    spacing += spacing;
-               }
+          //prefix sums of the chord lengths, added in the same order as before
+          double[] l = new double[pSize];
+          for (int i = 1; i < pSize; i++) {
+               l[i] = l[i - 1] + points.get(i).dist(points.get(i - 1));
           }
+          double length = l[pSize - 1];
           paras[0] = 0.0;
           for (int i = 1; i < pSize-1; i++) {
-               double l = 0;
-               for (int j = 1; j <= i; j++) {
-                    l += points.get(j).dist(points.get(j - 1));
+               if (length == 0.0) {
+                    paras[i] = i / (double) (pSize - 1);
+               } else {
+                    paras[i] = Math.round((1 / length) * l[i] * 1000000000)/1000000000.0;
                }
-               l = (1 / length) * l;
-               paras[i] = Math.round(l * 1000000000)/1000000000.0;
           }
           paras[pSize-1] = 1.0;
           return paras;
      }
 
-     private ArrayList<Double> genKnotV(double[] paras, int degree) {
-          ArrayList<Double> knots = new ArrayList<>();
+     private double[] genKnotV(double[] paras, int degree) {
           int m = paras.length + degree + 1;
-          for (int i = 0; i <= degree; i++) {
-               knots.add(0.0);
-          }
+          double[] knots = new double[m];
           for (int i = 1; i < paras.length - degree; i++) {
                double av = 0.0;
                for (int j = i; j <= i + degree - 1; j++) {
                     av += paras[j];
                }
-               knots.add((1 / (double) degree) * av);
-          }
-          for (int i = 0; i <= degree; i++) {
-               knots.add(1.0);
+               knots[degree + i] = (1 / (double) degree) * av;
           }
+          Arrays.fill(knots, m - degree - 1, m, 1.0);
           return knots;
      }
 
@@ -685,7 +1016,7 @@ public class NURBS extends Surface3D implements EditableSurface {
           knotsV = genKnotV(t,degreeV);
      }
 
-     private ArrayList<ArrayList<Point3D>> surfaceInterpolation(ArrayList<ArrayList<Point3D>> points) {
+     private double[] surfaceInterpolation(ArrayList<ArrayList<Point3D>> points) {
           int m = points.size();
           int n = points.get(0).size();
           double[] s = new double[m];
@@ -693,68 +1024,65 @@ public class NURBS extends Surface3D implements EditableSurface {
 
           params(s, t, points);
 
-          ArrayList<ArrayList<Point3D>> interPoints = new ArrayList<>();
-          for (int j = 0; j < n; j++) {
-               ArrayList<Point3D> inter = new ArrayList<>();
-               for (int i = 0; i < m; i++) {
-                    inter.add(points.get(i).get(j));
+          double[] q = new double[3 * m * n];
+          for (int i = 0, k = 0; i < m; i++) {
+               for (int j = 0; j < n; j++, k += 3) {
+                    Point3D p = points.get(i).get(j);
+                    q[k] = p.getX();
+                    q[k + 1] = p.getY();
+                    q[k + 2] = p.getZ();
                }
-               interPoints.add(curveInterpolation(inter, s, knotsU, degreeU));
           }
-
-          points.clear();
-          for (int j = 0; j < m; j++) {
-               ArrayList<Point3D> inter = new ArrayList<>();
-               for (int i = 0; i < n; i++) {
-                    inter.add(interPoints.get(i).get(j));
-               }
-               points.add(curveInterpolation(inter, t, knotsV, degreeV));
+          //the curves of one direction share their parameters, so one factorization serves all
+          collocation(s, knotsU, degreeU).solvePoints(q, n, 3, 3 * n, true);
+          collocation(t, knotsV, degreeV).solvePoints(q, m, 3 * n, 3, true);
+
+          double[] net = new double[4 * m * n];
+          for (int k = 0; k < m * n; k++) {
+               net[4 * k] = q[3 * k];
+               net[4 * k + 1] = q[3 * k + 1];
+               net[4 * k + 2] = q[3 * k + 2];
+               net[4 * k + 3] = 1.0;
           }
-          return points;
-
+          return net;
      }
 
-     private ArrayList<Point3D> curveInterpolation(ArrayList<Point3D> points, double[] params, ArrayList<Double> knots, int degree) {
+     /**
+      * Returns the factored collocation matrix N[i][j] = N_j(params[i]) of a curve
+      * interpolation. Row i only has the degree + 1 entries of its knot span.
+      */
+     private static BandedLU collocation(double[] params, double[] knots, int degree) {
           int n = params.length;
-
-          double[][] N = new double[n][n];
+          int[] spans = new int[n];
+          int kl = 0;
+          int ku = 0;
           for (int i = 0; i < n; i++) {
-               int kI = findKnotSpan(params[i], knots, degree);
-               N[i] = basisFunctions(knots, params[i], kI, degree, n);
-          }
-
-          RealMatrix NN = MatrixUtils.createRealMatrix(N);
-          NN = MatrixUtils.inverse(NN);
-          double[] x = new double[n];
-          double[] y = new double[n];
-          double[] z = new double[n];
-          int count = 0;
-          for (Point3D i : points) {
-               x[count] = i.getX();
-               y[count] = i.getY();
-               z[count++] = i.getZ();
-          }
-          RealVector DX = MatrixUtils.createRealVector(x);
-          RealVector DY = MatrixUtils.createRealVector(y);
-          RealVector DZ = MatrixUtils.createRealVector(z);
-          double[] px = NN.operate(DX).toArray();
-          double[] py = NN.operate(DY).toArray();
-          double[] pz = NN.operate(DZ).toArray();
-          ArrayList<Point3D> newPoints = new ArrayList<>();
+               spans[i] = NURBSGrid.findSpan(knots, n, degree, params[i]);
+               kl = Math.max(kl, i - (spans[i] - degree));
+               ku = Math.max(ku, spans[i] - i);
+          }
+          BandedLU lu = new BandedLU(n, kl, ku);
+          double[] bF = new double[degree + 1];
+          double[] left = new double[degree + 1];
+          double[] right = new double[degree + 1];
           for (int i = 0; i < n; i++) {
-               newPoints.add(new Point3D(px[i], py[i], pz[i]));
+               NURBSGrid.basisFunctions(knots, degree, spans[i], params[i], bF, 0, left, right);
+               for (int j = 0; j <= degree; j++) {
+                    lu.set(i, spans[i] - degree + j, bF[j]);
+               }
           }
-          return newPoints;
+          lu.factor();
+          return lu;
      }
 
      private void printStuff() {
           System.out.println("DegreeU: " + degreeU + " DegreeV: " + degreeV);
           System.out.println("nU: " + nU + " nV: " + nV);
           System.out.println("KnotsU:");
-          for (Double i : knotsU)
+          for (double i : knotsU)
                System.out.println(i);
           System.out.println("KnotsV:");
-          for (Double i : knotsV)
+          for (double i : knotsV)
                System.out.println(i);
      }
 
@@ -768,10 +1096,10 @@ public class NURBS extends Surface3D implements EditableSurface {
           sb.append("Degree U: " + degreeU + " Degree V: " + degreeV + System.lineSeparator());
           sb.append("Controlpoints along U: " + nU + " Controlpoints along V: " + nV + System.lineSeparator());
           sb.append("Knots U: ");
-          for (Double i : knotsU)
+          for (double i : knotsU)
                sb.append(i + " ");
           sb.append(System.lineSeparator() + "Knots V: ");
-          for (Double i : knotsV)
+          for (double i : knotsV)
                sb.append(i + " ");
           return sb.toString();
      }
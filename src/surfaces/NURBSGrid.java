@@ -0,0 +1,314 @@
+package surfaces;
+
+/**
+ * Evaluates a NURBS surface on a regular parameter grid. Along a grid row the U basis
+ * functions are the same for every point and along a column the V basis functions are,
+ * so the knot spans and basis rows are computed once per direction. The control points
+ * are read from a flat homogeneous array (x*w, y*w, z*w, w) and the tensor product is
+ * summed without allocating, in the same order as a single point evaluation.
+ */
+class NURBSGrid {
+
+     private int degreeU;
+     private int degreeV;
+     private int nV;
+     private double[] net;
+
+     private double[] u;
+     private double[] v;
+     private int[] spansU;
+     private int[] spansV;
+     private double[] basisU;
+     private double[] basisV;
+
+     /**
+      * Prepares the evaluation of a surface on a grid.
+      * @param degreeU Degree along the U-direction.
+      * @param degreeV Degree along the V-direction.
+      * @param knotsU Knot vector along the U-direction.
+      * @param knotsV Knot vector along the V-direction.
+      * @param nU Number of control points along the U-direction.
+      * @param nV Number of control points along the V-direction.
+      * @param net Homogeneous control points, 4 values per point, row by row along U.
+      * @param u Parameters of the grid rows.
+      * @param v Parameters of the grid columns.
+      */
+     NURBSGrid(int degreeU, int degreeV, double[] knotsU, double[] knotsV, int nU, int nV,
+               double[] net, double[] u, double[] v) {
+          this.degreeU = degreeU;
+          this.degreeV = degreeV;
+          this.nV = nV;
+          this.net = net;
+          this.u = u;
+          this.v = v;
+          spansU = new int[u.length];
+          spansV = new int[v.length];
+          basisU = new double[u.length * (degreeU + 1)];
+          basisV = new double[v.length * (degreeV + 1)];
+          double[] left = new double[Math.max(degreeU, degreeV) + 1];
+          double[] right = new double[left.length];
+          for (int i = 0; i < u.length; i++) {
+               spansU[i] = findSpan(knotsU, nU, degreeU, u[i]);
+               basisFunctions(knotsU, degreeU, spansU[i], u[i], basisU, i * (degreeU + 1), left, right);
+          }
+          for (int j = 0; j < v.length; j++) {
+               spansV[j] = findSpan(knotsV, nV, degreeV, v[j]);
+               basisFunctions(knotsV, degreeV, spansV[j], v[j], basisV, j * (degreeV + 1), left, right);
+          }
+     }
+
+     /**
+      * Returns the grid parameters 0, d, 2d, ... up to the end of the domain, accumulated
+      * and rounded to six decimals the way the tessellation always stepped through it.
+      * @param end End of the parameter domain.
+      * @param steps Number of intervals.
+      * @return steps + 1 parameters.
+      */
+     static double[] steps(double end, int steps) {
+          double d = end / steps;
+          double[] t = new double[steps + 1];
+          double s = 0;
+          for (int i = 0; i <= steps; i++) {
+               //the rounding may overshoot the end, which is outside of every knot span
+               t[i] = Math.min(s, end);
+               s += d;
+               s = Math.round(s * 1000000.0) / 1000000.0;
+          }
+          return t;
+     }
+
+     /**
+      * Returns the knot span containing t, see The NURBS Book, algorithm A2.1.
+      * @param knots Knot vector.
+      * @param n Number of control points.
+      * @param degree Degree.
+      * @param t Parameter.
+      * @return Index of the knot span.
+      */
+     static int findSpan(double[] knots, int n, int degree, double t) {
+          if (t == knots[n + 1]) return n - 1;
+          int low = degree;
+          int high = n + 1;
+          int mid = (low + high) / 2;
+
+          while (t < knots[mid] || t >= knots[mid + 1]) {
+               if (t < knots[mid])
+                    high = mid;
+               else
+                    low = mid;
+               mid = (low + high) / 2;
+          }
+          return mid;
+     }
+
+     /**
+      * Computes the degree + 1 non-vanishing basis functions at t, see The NURBS Book, algorithm A2.2.
+      * @param knots Knot vector.
+      * @param degree Degree.
+      * @param span Knot span of t.
+      * @param t Parameter.
+      * @param out Array receiving the basis functions.
+      * @param off Offset of the first basis function in out.
+      * @param left Scratch array of at least degree + 1 entries.
+      * @param right Scratch array of at least degree + 1 entries.
+      */
+     static void basisFunctions(double[] knots, int degree, int span, double t, double[] out, int off,
+                                double[] left, double[] right) {
+          out[off] = 1;
+          for (int i = 1; i <= degree; i++) {
+               left[i] = t - knots[span + 1 - i];
+               right[i] = knots[span + i] - t;
+               double saved = 0.0;
+
+               for (int j = 0; j < i; j++) {
+                    double temp = out[off + j] / (right[j + 1] + left[i - j]);
+                    out[off + j] = saved + right[j + 1] * temp;
+                    saved = left[i - j] * temp;
+               }
+               out[off + i] = saved;
+          }
+     }
+
+     /**
+      * Returns the length of the work array needed by derivativeBasisFunctions.
+      * @param degree Degree.
+      * @return Number of doubles.
+      */
+     static int derivativeWorkSize(int degree) {
+          return (degree + 1) * (degree + 5);
+     }
+
+     /**
+      * Computes the non-vanishing basis functions at t and their derivatives up to order n,
+      * see The NURBS Book, algorithm A2.3.
+      * @param knots Knot vector.
+      * @param degree Degree.
+      * @param span Knot span of t.
+      * @param t Parameter.
+      * @param n Highest derivative, at most degree.
+      * @param ders Array receiving the k-th derivative of basis function j at off + k * (degree + 1) + j.
+      * @param off Offset of the first basis function in ders.
+      * @param work Array of at least base + derivativeWorkSize(degree) doubles, overwritten from base.
+      * @param base Offset of the part of work used.
+      */
+     static void derivativeBasisFunctions(double[] knots, int degree, int span, double t, int n,
+                                          double[] ders, int off, double[] work, int base) {
+          int p1 = degree + 1;
+          //ndu at base, then left, right and the two rows of a
+          int ndu = base;
+          int left = ndu + p1 * p1;
+          int right = left + p1;
+          int a = right + p1;
+          work[ndu] = 1.0;
+          for (int j = 1; j <= degree; j++) {
+               work[left + j] = t - knots[span + 1 - j];
+               work[right + j] = knots[span + j] - t;
+               double saved = 0.0;
+               for (int r = 0; r < j; r++) {
+                    //lower triangle holds the knot differences, upper the basis functions
+                    work[ndu + j * p1 + r] = work[right + r + 1] + work[left + j - r];
+                    double temp = work[ndu + r * p1 + j - 1] / work[ndu + j * p1 + r];
+                    work[ndu + r * p1 + j] = saved + work[right + r + 1] * temp;
+                    saved = work[left + j - r] * temp;
+               }
+               work[ndu + j * p1 + j] = saved;
+          }
+          for (int j = 0; j <= degree; j++) {
+               ders[off + j] = work[ndu + j * p1 + degree];
+          }
+
+          for (int r = 0; r <= degree; r++) {
+               int s1 = a;
+               int s2 = a + p1;
+               work[s1] = 1.0;
+               for (int k = 1; k <= n; k++) {
+                    double d = 0.0;
+                    int rk = r - k;
+                    int pk = degree - k;
+                    if (r >= k) {
+                         work[s2] = work[s1] / work[ndu + (pk + 1) * p1 + rk];
+                         d = work[s2] * work[ndu + rk * p1 + pk];
+                    }
+                    int j1 = rk >= -1 ? 1 : -rk;
+                    int j2 = r - 1 <= pk ? k - 1 : degree - r;
+                    for (int j = j1; j <= j2; j++) {
+                         work[s2 + j] = (work[s1 + j] - work[s1 + j - 1]) / work[ndu + (pk + 1) * p1 + rk + j];
+                         d += work[s2 + j] * work[ndu + (rk + j) * p1 + pk];
+                    }
+                    if (r <= pk) {
+                         work[s2 + k] = -work[s1 + k - 1] / work[ndu + (pk + 1) * p1 + r];
+                         d += work[s2 + k] * work[ndu + r * p1 + pk];
+                    }
+                    ders[off + k * p1 + r] = d;
+                    int tmp = s1;
+                    s1 = s2;
+                    s2 = tmp;
+               }
+          }
+          int factor = degree;
+          for (int k = 1; k <= n; k++) {
+               for (int j = 0; j <= degree; j++) {
+                    ders[off + k * p1 + j] *= factor;
+               }
+               factor *= degree - k;
+          }
+     }
+
+     /**
+      * Returns the number of grid rows.
+      * @return Number of U parameters.
+      */
+     int rows() {
+          return u.length;
+     }
+
+     /**
+      * Returns the number of grid columns.
+      * @return Number of V parameters.
+      */
+     int columns() {
+          return v.length;
+     }
+
+     /**
+      * Returns the knot span a grid row lies in.
+      * @param i Row.
+      * @return Index of the U knot span.
+      */
+     int rowSpan(int i) {
+          return spansU[i];
+     }
+
+     /**
+      * Returns the knot span a grid column lies in.
+      * @param j Column.
+      * @return Index of the V knot span.
+      */
+     int columnSpan(int j) {
+          return spansV[j];
+     }
+
+     /**
+      * Evaluates all grid points.
+      * @param out Array receiving x, y and z of every point, row by row along U.
+      */
+     void evaluate(double[] out) {
+          evaluateRows(0, u.length, out);
+     }
+
+     /**
+      * Evaluates the grid points of a range of rows.
+      * @param from First row.
+      * @param to Row after the last one.
+      * @param out Array receiving x, y and z of every point, row by row along U.
+      */
+     void evaluateRows(int from, int to, double[] out) {
+          evaluateBlock(from, to, 0, v.length, out);
+     }
+
+     /**
+      * Evaluates the grid points of a block of rows and columns.
+      * @param rowFrom First row.
+      * @param rowTo Row after the last one.
+      * @param colFrom First column.
+      * @param colTo Column after the last one.
+      * @param out Array receiving x, y and z of every point, row by row along U.
+      */
+     void evaluateBlock(int rowFrom, int rowTo, int colFrom, int colTo, double[] out) {
+          int pU = degreeU + 1;
+          int pV = degreeV + 1;
+          for (int i = rowFrom; i < rowTo; i++) {
+               int rowBase = spansU[i] - degreeU;
+               for (int j = colFrom; j < colTo; j++) {
+                    int colBase = spansV[j] - degreeV;
+                    double x = 0;
+                    double y = 0;
+                    double z = 0;
+                    double w = 0;
+                    for (int k = 0; k < pU; k++) {
+                         double tx = 0;
+                         double ty = 0;
+                         double tz = 0;
+                         double tw = 0;
+                         int o = 4 * ((rowBase + k) * nV + colBase);
+                         for (int l = 0; l < pV; l++, o += 4) {
+                              double b = basisV[j * pV + l];
+                              tx = tx + net[o] * b;
+                              ty = ty + net[o + 1] * b;
+                              tz = tz + net[o + 2] * b;
+                              tw = tw + net[o + 3] * b;
+                         }
+                         double b = basisU[i * pU + k];
+                         x = x + tx * b;
+                         y = y + ty * b;
+                         z = z + tz * b;
+                         w = w + tw * b;
+                    }
+                    int p = 3 * (i * v.length + j);
+                    out[p] = x / w;
+                    out[p + 1] = y / w;
+                    out[p + 2] = z / w;
+               }
+          }
+     }
+}
@@ -0,0 +1,365 @@
+package surfaces;
+
+import java.util.Arrays;
+
+/**
+ * Flat copy of a NURBS surface: primitive knot vectors and the control net as
+ * homogeneous points (x*w, y*w, z*w, w), row by row along U. Knot insertion works
+ * on this form and returns a new net, which also gives the Bezier decomposition.
+ */
+class NURBSNet {
+
+     int degreeU;
+     int degreeV;
+     double[] knotsU;
+     double[] knotsV;
+     int nU;
+     int nV;
+     double[] net;
+
+     /**
+      * Wraps the given arrays, which are not copied.
+      * @param degreeU Degree along the U-direction.
+      * @param degreeV Degree along the V-direction.
+      * @param knotsU Knot vector along the U-direction, nU + degreeU + 1 knots.
+      * @param knotsV Knot vector along the V-direction, nV + degreeV + 1 knots.
+      * @param nU Number of control points along the U-direction.
+      * @param nV Number of control points along the V-direction.
+      * @param net Homogeneous control points, 4 values per point, row by row along U.
+      */
+     NURBSNet(int degreeU, int degreeV, double[] knotsU, double[] knotsV, int nU, int nV, double[] net) {
+          this.degreeU = degreeU;
+          this.degreeV = degreeV;
+          this.knotsU = knotsU;
+          this.knotsV = knotsV;
+          this.nU = nU;
+          this.nV = nV;
+          this.net = net;
+     }
+
+     /**
+      * Returns the number of times t occurs in a knot vector.
+      * @param knots Knot vector.
+      * @param t Knot.
+      * @return Multiplicity of t.
+      */
+     static int multiplicity(double[] knots, double t) {
+          int m = 0;
+          for (double k : knots) {
+               if (k == t) m++;
+          }
+          return m;
+     }
+
+     /**
+      * Inserts a knot with Boehm's algorithm, see The NURBS Book, algorithm A5.3. The
+      * surface is unchanged; the number of insertions is limited so the multiplicity
+      * does not exceed the degree.
+      * @param alongU true to insert into the U knot vector, false for V.
+      * @param t Knot inside the parameter domain.
+      * @param times Number of insertions.
+      * @return The refined net, or this net if nothing was inserted.
+      */
+     NURBSNet insertKnot(boolean alongU, double t, int times) {
+          double[] knots = alongU ? knotsU : knotsV;
+          int degree = alongU ? degreeU : degreeV;
+          int n = alongU ? nU : nV;
+          int s = multiplicity(knots, t);
+          int r = Math.min(times, degree - s);
+          if (r <= 0 || t < knots[degree] || t > knots[n]) {
+               return this;
+          }
+          int k = NURBSGrid.findSpan(knots, n, degree, t);
+
+          double[] nk = new double[knots.length + r];
+          System.arraycopy(knots, 0, nk, 0, k + 1);
+          for (int i = 1; i <= r; i++) {
+               nk[k + i] = t;
+          }
+          System.arraycopy(knots, k + 1, nk, k + 1 + r, knots.length - k - 1);
+
+          int nU2 = alongU ? nU + r : nU;
+          int nV2 = alongU ? nV : nV + r;
+          double[] nn = new double[4 * nU2 * nV2];
+          double[] rw = new double[4 * (degree + 1)];
+          //one curve per column (inserting along U) or per row (along V)
+          int curves = alongU ? nV : nU;
+          for (int c = 0; c < curves; c++) {
+               int src = alongU ? 4 * c : 4 * c * nV;
+               int dst = alongU ? 4 * c : 4 * c * nV2;
+               int srcStride = alongU ? 4 * nV : 4;
+               int dstStride = alongU ? 4 * nV2 : 4;
+               insertCurve(knots, degree, n, k, s, r, t, nn, dst, dstStride, src, srcStride, rw);
+          }
+          return alongU ? new NURBSNet(degreeU, degreeV, nk, knotsV, nU2, nV2, nn)
+                        : new NURBSNet(degreeU, degreeV, knotsU, nk, nU2, nV2, nn);
+     }
+
+     /**
+      * Inserts t r times into one curve of the net, see The NURBS Book, algorithm A5.1.
+      */
+     private void insertCurve(double[] knots, int p, int n, int k, int s, int r, double t,
+                              double[] q, int dst, int dstStride, int src, int srcStride, double[] rw) {
+          for (int i = 0; i <= k - p; i++) {
+               System.arraycopy(net, src + i * srcStride, q, dst + i * dstStride, 4);
+          }
+          for (int i = k - s; i < n; i++) {
+               System.arraycopy(net, src + i * srcStride, q, dst + (i + r) * dstStride, 4);
+          }
+          for (int i = 0; i <= p - s; i++) {
+               System.arraycopy(net, src + (k - p + i) * srcStride, rw, 4 * i, 4);
+          }
+          int l = 0;
+          for (int j = 1; j <= r; j++) {
+               l = k - p + j;
+               for (int i = 0; i <= p - j - s; i++) {
+                    double alpha = (t - knots[l + i]) / (knots[i + k + 1] - knots[l + i]);
+                    for (int c = 0; c < 4; c++) {
+                         rw[4 * i + c] = alpha * rw[4 * (i + 1) + c] + (1 - alpha) * rw[4 * i + c];
+                    }
+               }
+               System.arraycopy(rw, 0, q, dst + l * dstStride, 4);
+               System.arraycopy(rw, 4 * (p - j - s), q, dst + (k + r - j - s) * dstStride, 4);
+          }
+          for (int i = l + 1; i < k - s; i++) {
+               System.arraycopy(rw, 4 * (i - l), q, dst + i * dstStride, 4);
+          }
+     }
+
+     /**
+      * Returns the distinct knots bounding the non-empty spans of the parameter domain.
+      * @param knots Knot vector.
+      * @param degree Degree.
+      * @param n Number of control points.
+      * @return Increasing break points, the first and last being the ends of the domain.
+      */
+     static double[] breakPoints(double[] knots, int degree, int n) {
+          double[] b = new double[n - degree + 1];
+          int count = 0;
+          b[count++] = knots[degree];
+          for (int i = degree + 1; i <= n; i++) {
+               if (knots[i] > b[count - 1]) {
+                    b[count++] = knots[i];
+               }
+          }
+          return Arrays.copyOf(b, count);
+     }
+
+     /**
+      * Decomposes the surface into rational Bezier patches by raising the multiplicity of
+      * every interior knot to the degree. The knot vectors are clamped, as everywhere in
+      * NURBS, so the first and last control points are the ends of the first and last patch.
+      * @return Patches indexed by U-span and V-span.
+      */
+     BezierPatch[][] bezierPatches() {
+          double[] bU = breakPoints(knotsU, degreeU, nU);
+          double[] bV = breakPoints(knotsV, degreeV, nV);
+          NURBSNet r = this;
+          for (int i = 1; i < bU.length - 1; i++) {
+               r = r.insertKnot(true, bU[i], degreeU);
+          }
+          for (int j = 1; j < bV.length - 1; j++) {
+               r = r.insertKnot(false, bV[j], degreeV);
+          }
+          BezierPatch[][] patches = new BezierPatch[bU.length - 1][bV.length - 1];
+          for (int a = 0; a < patches.length; a++) {
+               for (int b = 0; b < patches[a].length; b++) {
+                    double[] pn = new double[4 * (degreeU + 1) * (degreeV + 1)];
+                    for (int i = 0, k = 0; i <= degreeU; i++) {
+                         int row = a * degreeU + i;
+                         for (int j = 0; j <= degreeV; j++, k += 4) {
+                              int col = b * degreeV + j;
+                              System.arraycopy(r.net, 4 * (row * r.nV + col), pn, k, 4);
+                         }
+                    }
+                    patches[a][b] = new BezierPatch(degreeU, degreeV, bU[a], bU[a + 1], bV[b], bV[b + 1], pn);
+               }
+          }
+          return patches;
+     }
+
+     /**
+      * Returns the length of the work array needed by derivatives and normal.
+      * @return Number of doubles.
+      */
+     int workSize() {
+          return 9 + 2 * (degreeU + 1) + 2 * (degreeV + 1) + 12
+                    + NURBSGrid.derivativeWorkSize(Math.max(degreeU, degreeV));
+     }
+
+     /**
+      * Evaluates the surface and its first partial derivatives. The homogeneous point and
+      * its derivatives are summed from the derivative basis functions and then projected
+      * with the quotient rule: S = A / w and S_u = (A_u - w_u S) / w.
+      * @param u Parameter along U, inside the domain.
+      * @param v Parameter along V, inside the domain.
+      * @param work Array of at least workSize() doubles, overwritten.
+      * @param out Array receiving S, S_u and S_v, 3 values each.
+      */
+     void derivatives(double u, double v, double[] work, double[] out) {
+          int spanU = NURBSGrid.findSpan(knotsU, nU, degreeU, u);
+          int spanV = NURBSGrid.findSpan(knotsV, nV, degreeV, v);
+          int pU = degreeU + 1;
+          int pV = degreeV + 1;
+          //the first 9 values are kept for normal, then come the basis functions along U
+          //and V with their derivatives, A, A_u and A_v, and the work of the basis functions
+          int dU = 9;
+          int dV = dU + 2 * pU;
+          int a = dV + 2 * pV;
+          int base = a + 12;
+          NURBSGrid.derivativeBasisFunctions(knotsU, degreeU, spanU, u, Math.min(1, degreeU), work, dU, work, base);
+          NURBSGrid.derivativeBasisFunctions(knotsV, degreeV, spanV, v, Math.min(1, degreeV), work, dV, work, base);
+
+          //A, A_u and A_v, each as x*w, y*w, z*w, w
+          Arrays.fill(work, a, a + 12, 0.0);
+          for (int i = 0; i < pU; i++) {
+               int o = 4 * ((spanU - degreeU + i) * nV + spanV - degreeV);
+               for (int j = 0; j < pV; j++, o += 4) {
+                    double b = work[dU + i] * work[dV + j];
+                    double bu = work[dU + pU + i] * work[dV + j];
+                    double bv = work[dU + i] * work[dV + pV + j];
+                    for (int c = 0; c < 4; c++) {
+                         work[a + c] += b * net[o + c];
+                         work[a + 4 + c] += bu * net[o + c];
+                         work[a + 8 + c] += bv * net[o + c];
+                    }
+               }
+          }
+          double w = work[a + 3];
+          for (int c = 0; c < 3; c++) {
+               out[c] = work[a + c] / w;
+               out[3 + c] = (work[a + 4 + c] - work[a + 7] * out[c]) / w;
+               out[6 + c] = (work[a + 8 + c] - work[a + 11] * out[c]) / w;
+          }
+     }
+
+     /**
+      * Computes the unit normal S_u x S_v.
+      * @param u Parameter along U, inside the domain.
+      * @param v Parameter along V, inside the domain.
+      * @param work Array of at least workSize() doubles, overwritten.
+      * @param out Array receiving the normal.
+      * @param off Offset of x in out.
+      * @return false if the surface is degenerate at (u, v) and no normal was written.
+      */
+     boolean normal(double u, double v, double[] work, double[] out, int off) {
+          double[] d = work;
+          derivatives(u, v, work, d);
+          double nx = d[4] * d[8] - d[5] * d[7];
+          double ny = d[5] * d[6] - d[3] * d[8];
+          double nz = d[3] * d[7] - d[4] * d[6];
+          double len = Math.sqrt(nx * nx + ny * ny + nz * nz);
+          if (len == 0 || Double.isNaN(len)) {
+               return false;
+          }
+          out[off] = nx / len;
+          out[off + 1] = ny / len;
+          out[off + 2] = nz / len;
+          return true;
+     }
+
+     /**
+      * Returns the nodes and weights of the n-point Gauss-Legendre rule on [-1, 1], found
+      * by Newton iteration on the Legendre polynomial.
+      * @param n Number of nodes.
+      * @return The nodes in the first row and the weights in the second.
+      */
+     static double[][] gaussLegendre(int n) {
+          double[] x = new double[n];
+          double[] w = new double[n];
+          for (int i = 0; i < (n + 1) / 2; i++) {
+               double z = Math.cos(Math.PI * (i + 0.75) / (n + 0.5));
+               double dp;
+               double z1;
+               do {
+                    double p0 = 1.0;
+                    double p1 = 0.0;
+                    for (int j = 1; j <= n; j++) {
+                         double p2 = p1;
+                         p1 = p0;
+                         p0 = ((2 * j - 1) * z * p1 - (j - 1) * p2) / j;
+                    }
+                    dp = n * (z * p0 - p1) / (z * z - 1);
+                    z1 = z;
+                    z = z1 - p0 / dp;
+               } while (Math.abs(z - z1) > 1e-15);
+               x[i] = -z;
+               x[n - 1 - i] = z;
+               w[i] = 2 / ((1 - z * z) * dp * dp);
+               w[n - 1 - i] = w[i];
+          }
+          return new double[][]{x, w};
+     }
+
+     /**
+      * Computes the surface area as the integral of |S_u x S_v| with a Gauss-Legendre rule
+      * on every pair of knot spans. The spans are independent and may be integrated on
+      * the common fork-join pool; their areas are added in span order either way.
+      * @param parallel true to integrate the spans in parallel.
+      * @return Surface area.
+      */
+     double surfaceArea(boolean parallel) {
+          double[] bU = breakPoints(knotsU, degreeU, nU);
+          double[] bV = breakPoints(knotsV, degreeV, nV);
+          double[][] rU = gaussLegendre(degreeU + 4);
+          double[][] rV = gaussLegendre(degreeV + 4);
+          int spansV = bV.length - 1;
+          double[] areas = new double[(bU.length - 1) * spansV];
+          new SpanArea(bU, bV, rU, rV, areas, 0, areas.length).run(parallel);
+          double sum = 0;
+          for (double a : areas) {
+               sum += a;
+          }
+          return sum;
+     }
+
+     private class SpanArea extends RangeAction {
+          private static final long serialVersionUID = 1L;
+          private double[] bU;
+          private double[] bV;
+          private double[][] rU;
+          private double[][] rV;
+          private double[] areas;
+
+          SpanArea(double[] bU, double[] bV, double[][] rU, double[][] rV, double[] areas, int from, int to) {
+               //a span pair is a few hundred evaluations, so every pair is its own block
+               super(from, to, 1);
+               this.bU = bU;
+               this.bV = bV;
+               this.rU = rU;
+               this.rV = rV;
+               this.areas = areas;
+          }
+
+          @Override
+          protected void compute(int from, int to) {
+               double[] d = new double[9];
+               double[] work = new double[workSize()];
+               int spansV = bV.length - 1;
+               for (int s = from; s < to; s++) {
+                    int a = s / spansV;
+                    int b = s % spansV;
+                    double hu = (bU[a + 1] - bU[a]) / 2;
+                    double hv = (bV[b + 1] - bV[b]) / 2;
+                    double sum = 0;
+                    for (int i = 0; i < rU[0].length; i++) {
+                         double u = bU[a] + hu * (rU[0][i] + 1);
+                         for (int j = 0; j < rV[0].length; j++) {
+                              double v = bV[b] + hv * (rV[0][j] + 1);
+                              derivatives(u, v, work, d);
+                              double nx = d[4] * d[8] - d[5] * d[7];
+                              double ny = d[5] * d[6] - d[3] * d[8];
+                              double nz = d[3] * d[7] - d[4] * d[6];
+                              sum += rU[1][i] * rV[1][j] * Math.sqrt(nx * nx + ny * ny + nz * nz);
+                         }
+                    }
+                    areas[s] = sum * hu * hv;
+               }
+          }
+
+          @Override
+          protected RangeAction split(int from, int to, int grain) {
+               return new SpanArea(bU, bV, rU, rV, areas, from, to);
+          }
+     }
+}
@@ -0,0 +1,373 @@
+package surfaces;
+
+import java.util.Arrays;
+import java.util.HashMap;
+
+/**
+ * Adaptive tessellation of a NURBS surface. Every Bezier patch, one per pair of non-empty
+ * knot spans, is the root of a quadtree in the (u, v) domain, so triangles never straddle
+ * a knot line. A cell is split into four while the surface deviates from the two triangles
+ * the cell would be cut into by more than the chord tolerance, measured at the midpoints of
+ * their sides and at a few points inside them, or while the normals of its quarters
+ * deviate from the normal of the whole cell by more than the angle tolerance. Cell corners
+ * live on a lattice of 2^MAX_DEPTH points per patch, so corners shared by cells of
+ * different sizes are the same vertex. A leaf whose edges carry corners of finer neighbours is fanned around its centre,
+ * which closes every T-junction and keeps the mesh free of cracks.
+ */
+class NURBSTessellator {
+
+     private static final int MAX_DEPTH = 8;
+     private static final int SIZE = 1 << MAX_DEPTH;
+     //weights of the second and third corner at the points tested inside a triangle
+     private static final double[] INSIDE = {1 / 3.0, 1 / 3.0, 0.5, 0.25, 0.25, 0.5, 0.25, 0.25};
+
+     private BezierPatch[][] patches;
+     private NURBSNet net;
+
+     private double chordTolerance;
+     private double cosAngle;
+
+     private double[] work;
+     private HashMap<Long, Integer> samples;
+     private double[] sampleXYZ;
+     private int sampleCount;
+     private int[] leaves;
+     private int leafCount;
+
+     /**
+      * Prepares the tessellation of a surface.
+      * @param patches Bezier decomposition of the surface, one patch per pair of knot spans.
+      * @param net The surface itself, for the normals.
+      */
+     NURBSTessellator(BezierPatch[][] patches, NURBSNet net) {
+          this.patches = patches;
+          this.net = net;
+          this.work = new double[net.workSize()];
+     }
+
+     /**
+      * Tessellates the surface.
+      * @param chordTolerance Maximum distance between the surface and its triangles, 0 to disable.
+      * @param angleTolerance Maximum deviation of the normals within a cell in radians, 0 to disable.
+      * @return Indexed triangle mesh of the surface.
+      */
+     IndexedMesh tessellate(double chordTolerance, double angleTolerance) {
+          this.chordTolerance = chordTolerance;
+          this.cosAngle = angleTolerance > 0 ? Math.cos(angleTolerance) : -2;
+          samples = new HashMap<>();
+          sampleXYZ = new double[3 * 256];
+          sampleCount = 0;
+          leaves = new int[3 * 64];
+          leafCount = 0;
+          for (int i = 0; i < patches.length; i++) {
+               for (int j = 0; j < patches[i].length; j++) {
+                    refine(i * SIZE, j * SIZE, SIZE);
+               }
+          }
+
+          //the leaf corners are the vertices, tested but unused samples are left out
+          HashMap<Long, Integer> vertices = new HashMap<>(2 * samples.size());
+          for (int l = 0; l < leafCount; l++) {
+               int iu = leaves[3 * l];
+               int iv = leaves[3 * l + 1];
+               int s = leaves[3 * l + 2];
+               vertex(vertices, iu, iv);
+               vertex(vertices, iu + s, iv);
+               vertex(vertices, iu + s, iv + s);
+               vertex(vertices, iu, iv + s);
+          }
+
+          //a side holds at most SIZE - 1 corners of finer cells
+          int[] ring = new int[4 * SIZE];
+          int[] tri = new int[3 * 2 * leafCount];
+          int t = 0;
+          for (int l = 0; l < leafCount; l++) {
+               int iu = leaves[3 * l];
+               int iv = leaves[3 * l + 1];
+               int s = leaves[3 * l + 2];
+               int n = 0;
+               ring[n++] = vertices.get(key(iu, iv));
+               n = side(vertices, iu, iv, 1, 0, s, ring, n);
+               ring[n++] = vertices.get(key(iu + s, iv));
+               n = side(vertices, iu + s, iv, 0, 1, s, ring, n);
+               ring[n++] = vertices.get(key(iu + s, iv + s));
+               n = side(vertices, iu + s, iv + s, -1, 0, s, ring, n);
+               ring[n++] = vertices.get(key(iu, iv + s));
+               n = side(vertices, iu, iv + s, 0, -1, s, ring, n);
+
+               int need = 3 * (n == 4 ? 2 : n);
+               if (tri.length < t + need) {
+                    tri = Arrays.copyOf(tri, Math.max(2 * tri.length, t + need));
+               }
+               if (n == 4) {
+                    t = put(tri, t, ring[0], ring[1], ring[3]);
+                    t = put(tri, t, ring[1], ring[2], ring[3]);
+               } else {
+                    int c = vertex(vertices, iu + s / 2, iv + s / 2);
+                    for (int k = 0; k < n; k++) {
+                         t = put(tri, t, c, ring[k], ring[(k + 1) % n]);
+                    }
+               }
+          }
+
+          double[] xyz = new double[3 * vertices.size()];
+          for (Long k : vertices.keySet()) {
+               System.arraycopy(sampleXYZ, 3 * samples.get(k), xyz, 3 * vertices.get(k), 3);
+          }
+          IndexedMesh mesh = new IndexedMesh(xyz, vertices.size(), tri, t / 3);
+          double[] normals = new double[xyz.length];
+          for (Long k : vertices.keySet()) {
+               normal((int) (k >> 32), (int) (long) k, normals, 3 * vertices.get(k));
+          }
+          mesh.setNormals(normals);
+          samples = null;
+          sampleXYZ = null;
+          leaves = null;
+          return mesh;
+     }
+
+     /**
+      * Computes the analytic normal at a lattice point. Where the surface is degenerate,
+      * as at a collapsed edge, the point is moved slightly into its patch.
+      */
+     private void normal(int iu, int iv, double[] out, int off) {
+          int a = Math.min(iu / SIZE, patches.length - 1);
+          int b = Math.min(iv / SIZE, patches[0].length - 1);
+          BezierPatch p = patches[a][b];
+          double s = (iu - a * SIZE) / (double) SIZE;
+          double t = (iv - b * SIZE) / (double) SIZE;
+          for (double shift = 0; shift < 1e-2; shift = shift == 0 ? 1e-8 : shift * 100) {
+               double ss = s + (0.5 - s) * shift;
+               double ts = t + (0.5 - t) * shift;
+               if (net.normal(parameter(p.getU0(), p.getU1(), ss), parameter(p.getV0(), p.getV1(), ts), work, out, off)) {
+                    return;
+               }
+          }
+     }
+
+     //exact at the end of the range, so the parameter never leaves the domain
+     private static double parameter(double t0, double t1, double s) {
+          return s == 1 ? t1 : t0 + (t1 - t0) * s;
+     }
+
+     /**
+      * Splits a cell until it is flat enough or has the smallest size, and records the leaves.
+      */
+     private void refine(int iu, int iv, int s) {
+          if (s > 1 && needsSplit(iu, iv, s)) {
+               int h = s / 2;
+               refine(iu, iv, h);
+               refine(iu + h, iv, h);
+               refine(iu, iv + h, h);
+               refine(iu + h, iv + h, h);
+               return;
+          }
+          if (leaves.length < 3 * (leafCount + 1)) {
+               leaves = Arrays.copyOf(leaves, 2 * leaves.length);
+          }
+          leaves[3 * leafCount] = iu;
+          leaves[3 * leafCount + 1] = iv;
+          leaves[3 * leafCount + 2] = s;
+          leafCount++;
+     }
+
+     /**
+      * Samples the cell on a 3 by 3 grid and inside its two triangles, and compares the
+      * samples with the triangles.
+      */
+     private boolean needsSplit(int iu, int iv, int s) {
+          int h = s / 2;
+          int[] p = new int[9];
+          for (int a = 0; a < 3; a++) {
+               for (int b = 0; b < 3; b++) {
+                    p[3 * a + b] = 3 * sample(iu + a * h, iv + b * h);
+               }
+          }
+          double[] n = new double[3];
+          boolean flat = normal(p[0], p[8], p[2], p[6], n);
+          if (chordTolerance > 0) {
+               double tol = chordTolerance * chordTolerance;
+               //the sides, the diagonal and the insides of the two triangles a leaf is cut into
+               if (lineDistance(p[1], p[0], p[2]) > tol
+                         || lineDistance(p[7], p[6], p[8]) > tol
+                         || lineDistance(p[3], p[0], p[6]) > tol
+                         || lineDistance(p[5], p[2], p[8]) > tol
+                         || planeDistance(p[4], p[6], p[2], flat ? n : null) > tol
+                         || triangleDistance(iu, iv, s, p[0], p[6], p[2], tol)
+                         || triangleDistance(iu + s, iv + s, -s, p[8], p[2], p[6], tol)) {
+                    return true;
+               }
+          }
+          if (cosAngle > -2 && flat) {
+               double[] m = new double[3];
+               for (int a = 0; a < 2; a++) {
+                    for (int b = 0; b < 2; b++) {
+                         int o = 3 * a + b;
+                         if (normal(p[o], p[o + 4], p[o + 1], p[o + 3], m)
+                                   && n[0] * m[0] + n[1] * m[1] + n[2] * m[2] < cosAngle) {
+                              return true;
+                         }
+                    }
+               }
+          }
+          return false;
+     }
+
+     /**
+      * Returns the squared distance of sample c from the line through samples a and b.
+      */
+     private double lineDistance(int c, int a, int b) {
+          double ux = sampleXYZ[b] - sampleXYZ[a];
+          double uy = sampleXYZ[b + 1] - sampleXYZ[a + 1];
+          double uz = sampleXYZ[b + 2] - sampleXYZ[a + 2];
+          double vx = sampleXYZ[c] - sampleXYZ[a];
+          double vy = sampleXYZ[c + 1] - sampleXYZ[a + 1];
+          double vz = sampleXYZ[c + 2] - sampleXYZ[a + 2];
+          double len = ux * ux + uy * uy + uz * uz;
+          if (len == 0) {
+               return vx * vx + vy * vy + vz * vz;
+          }
+          double cx = uy * vz - uz * vy;
+          double cy = uz * vx - ux * vz;
+          double cz = ux * vy - uy * vx;
+          return (cx * cx + cy * cy + cz * cz) / len;
+     }
+
+     /**
+      * Returns the squared distance of sample c from the midpoint of samples a and b,
+      * measured along the normal n of the cell, or in full if the cell has no normal.
+      */
+     private double planeDistance(int c, int a, int b, double[] n) {
+          double[] x = new double[3];
+          for (int k = 0; k < 3; k++) {
+               x[k] = sampleXYZ[c + k] - (sampleXYZ[a + k] + sampleXYZ[b + k]) / 2;
+          }
+          if (n == null) {
+               return x[0] * x[0] + x[1] * x[1] + x[2] * x[2];
+          }
+          double dot = x[0] * n[0] + x[1] * n[1] + x[2] * n[2];
+          return dot * dot;
+     }
+
+     /**
+      * Tests the surface inside the triangle of samples a, b and c against the triangle, where
+      * a lies at lattice point (iu, iv), b at (iu + s, iv) and c at (iu, iv + s). The distance
+      * is measured along the normal of the triangle, or in full if the triangle has no normal.
+      * @return true if a point is further than the squared tolerance from the triangle.
+      */
+     private boolean triangleDistance(int iu, int iv, int s, int a, int b, int c, double tol) {
+          double[] n = new double[3];
+          boolean flat = normal(a, b, c, a, n);
+          double[] x = new double[3];
+          for (int k = 0; k < INSIDE.length; k += 2) {
+               double wb = INSIDE[k];
+               double wc = INSIDE[k + 1];
+               evaluate(iu + wb * s, iv + wc * s, x, 0);
+               for (int i = 0; i < 3; i++) {
+                    x[i] -= sampleXYZ[a + i] + wb * (sampleXYZ[b + i] - sampleXYZ[a + i])
+                              + wc * (sampleXYZ[c + i] - sampleXYZ[a + i]);
+               }
+               double dot = x[0] * n[0] + x[1] * n[1] + x[2] * n[2];
+               double dist = flat ? dot * dot : x[0] * x[0] + x[1] * x[1] + x[2] * x[2];
+               if (dist > tol) {
+                    return true;
+               }
+          }
+          return false;
+     }
+
+     /**
+      * Computes the unit normal of a quad from its diagonals a-c and b-d.
+      * @return false if the quad is degenerate.
+      */
+     private boolean normal(int a, int c, int b, int d, double[] out) {
+          double ux = sampleXYZ[c] - sampleXYZ[a];
+          double uy = sampleXYZ[c + 1] - sampleXYZ[a + 1];
+          double uz = sampleXYZ[c + 2] - sampleXYZ[a + 2];
+          double vx = sampleXYZ[b] - sampleXYZ[d];
+          double vy = sampleXYZ[b + 1] - sampleXYZ[d + 1];
+          double vz = sampleXYZ[b + 2] - sampleXYZ[d + 2];
+          double nx = uy * vz - uz * vy;
+          double ny = uz * vx - ux * vz;
+          double nz = ux * vy - uy * vx;
+          double len = Math.sqrt(nx * nx + ny * ny + nz * nz);
+          if (len == 0) {
+               return false;
+          }
+          out[0] = nx / len;
+          out[1] = ny / len;
+          out[2] = nz / len;
+          return true;
+     }
+
+     /**
+      * Collects the corners of finer cells on a side of a leaf, excluding its end points.
+      * A finer neighbour always has a corner at the midpoint of the side, so only the
+      * halves of sides with a midpoint need to be searched.
+      */
+     private int side(HashMap<Long, Integer> vertices, int iu, int iv, int du, int dv, int s,
+                      int[] ring, int n) {
+          if (s < 2) {
+               return n;
+          }
+          int h = s / 2;
+          Integer mid = vertices.get(key(iu + du * h, iv + dv * h));
+          if (mid == null) {
+               return n;
+          }
+          n = side(vertices, iu, iv, du, dv, h, ring, n);
+          ring[n++] = mid;
+          return side(vertices, iu + du * h, iv + dv * h, du, dv, h, ring, n);
+     }
+
+     private static int put(int[] tri, int t, int a, int b, int c) {
+          tri[t] = a;
+          tri[t + 1] = b;
+          tri[t + 2] = c;
+          return t + 3;
+     }
+
+     private static long key(int iu, int iv) {
+          return ((long) iu << 32) | (iv & 0xffffffffL);
+     }
+
+     /**
+      * Returns the number of the vertex at a lattice point, numbering it if it is new.
+      */
+     private int vertex(HashMap<Long, Integer> vertices, int iu, int iv) {
+          Long k = key(iu, iv);
+          Integer i = vertices.get(k);
+          if (i == null) {
+               sample(iu, iv);
+               i = vertices.size();
+               vertices.put(k, i);
+          }
+          return i;
+     }
+
+     /**
+      * Returns the number of the sample at a lattice point, evaluating the surface once.
+      */
+     private int sample(int iu, int iv) {
+          Long k = key(iu, iv);
+          Integer i = samples.get(k);
+          if (i != null) {
+               return i;
+          }
+          if (sampleXYZ.length < 3 * (sampleCount + 1)) {
+               sampleXYZ = Arrays.copyOf(sampleXYZ, 2 * sampleXYZ.length);
+          }
+          evaluate(iu, iv, sampleXYZ, 3 * sampleCount);
+          samples.put(k, sampleCount);
+          return sampleCount++;
+     }
+
+     /**
+      * Evaluates the surface at a point of the lattice, or between its points.
+      */
+     private void evaluate(double iu, double iv, double[] out, int off) {
+          int a = Math.min((int) (iu / SIZE), patches.length - 1);
+          int b = Math.min((int) (iv / SIZE), patches[0].length - 1);
+          patches[a][b].evaluateLocal((iu - a * SIZE) / SIZE, (iv - b * SIZE) / SIZE, out, off);
+     }
+}
@@ -0,0 +1,84 @@
+package surfaces;
+
+/**
+ * Control point of a NURBS surface as seen from outside. The point is a view of one
+ * entry of the flat control net: setting a coordinate or the weight writes the entry, in
+ * the plain and in the homogeneous form, and tells the surface which point moved. Once the surface replaces its net,
+ * for example after a knot insertion, the view is detached and keeps its last values.
+ */
+class NetPoint extends WPoint3D {
+
+     private NURBS owner;
+     private double[] cartesian;
+     private double[] net;
+     private int index;
+
+     /**
+      * Constructs the view of control point index, read from the net.
+      * @param owner Surface which is told about changes.
+      * @param cartesian Control net as x, y, z and weight, 4 values per point.
+      * @param net Homogeneous control net, 4 values per point.
+      * @param index Index of the point, i * nV + j.
+      */
+     NetPoint(NURBS owner, double[] cartesian, double[] net, int index) {
+          super(0, 0, 0, 0);
+          this.owner = owner;
+          this.cartesian = cartesian;
+          this.net = net;
+          this.index = index;
+          load();
+     }
+
+     /**
+      * Reads the values of the point from the net again, without writing anything back.
+      */
+     void load() {
+          int k = 4 * index;
+          super.setX(cartesian[k]);
+          super.setY(cartesian[k + 1]);
+          super.setZ(cartesian[k + 2]);
+          super.setWeight(cartesian[k + 3]);
+     }
+
+     /**
+      * Stops writing changes to the net.
+      */
+     void detach() {
+          owner = null;
+     }
+
+     @Override
+     public void setX(double x) {
+          super.setX(x);
+          store();
+     }
+
+     @Override
+     public void setY(double y) {
+          super.setY(y);
+          store();
+     }
+
+     @Override
+     public void setZ(double z) {
+          super.setZ(z);
+          store();
+     }
+
+     @Override
+     public void setWeight(double weight) {
+          super.setWeight(weight);
+          store();
+     }
+
+     private void store() {
+          if (owner == null) return;
+          int k = 4 * index;
+          cartesian[k] = getX();
+          cartesian[k + 1] = getY();
+          cartesian[k + 2] = getZ();
+          cartesian[k + 3] = getWeight();
+          NURBS.weigh(cartesian, net, k);
+          owner.pointMoved(index);
+     }
+}
@@ -2,6 +2,8 @@ package surfaces;
 
 
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.concurrent.ForkJoinPool;
 
 import org.apache.commons.math3.geometry.euclidean.threed.Vector3D;
 
@@ -12,13 +14,39 @@ public abstract class ParametricSurface3D extends Surface3D {
 	//unit vectors
 	public static final String TRAPEZOID 				= "Trapezoidal rule";
 	public static final String SIMPSON 					= "Simpson's rule";
+	public static final String GAUSS_KRONROD 			= "Gauss-Kronrod";
 	
 	protected static final Vector3D 	I_VECTOR 		= new Vector3D(1.0, 0.0, 0.0);
 	protected static final Vector3D 	J_VECTOR 		= new Vector3D(0.0, 1.0, 0.0);
 	protected static final Vector3D 	K_VECTOR 		= new Vector3D(0.0, 0.0, 1.0);
 	private static final int INTEGRATION_STEPS_TRAP 	= 1000;
 	private static final int INTEGRATION_STEPS_SIMP 	= 1000;
-	private static boolean				trapezoid		= true;
+	private static final double AREA_TOLERANCE 			= 1e-10;
+	private static final int AREA_PANELS 				= 16;
+	private static final int AREA_DEPTH 				= 30;
+	private static String				method			= TRAPEZOID;
+	private static final int SAMPLE_ROWS 				= 0;
+	private static final int INDEX_ROWS 				= 1;
+	private static final int POINT_ROWS 				= 2;
+	private static final int FACE_ROWS 					= 3;
+	private static final int ROW_GRAIN 					= 4096;
+	private static final int LOD_MIN_INTERVALS 			= 4;
+	private boolean 			parallel 		= true;
+	private double 				area 			= Double.NaN;
+	private String 				areaMethod;
+	private double[] 			areaBounds 		= new double[4];
+	private GridAxis 			tAxis;
+	private GridAxis 			sAxis;
+	
+	//Gauss-Kronrod 7-15 rule: the Kronrod abscissae, the Gauss points are the odd ones and 0
+	private static final double[] XGK = {0.991455371120812639206854697526329, 0.949107912342758524526189684047851,
+			0.864864423359769072789712788640926, 0.741531185599394439863864773280788, 0.586087235467691130294144845693013,
+			0.405845151377397166906606412076961, 0.207784955007898467600689403773245, 0.0};
+	private static final double[] WGK = {0.022935322010529224963732008058970, 0.063092092629978553290700663189204,
+			0.104790010322250183839876322541518, 0.140653259715525918745189590510238, 0.169004726639267902826583426598550,
+			0.190350578064785409913256402421014, 0.204432940075298892414161999234649, 0.209482141084727828012999174891714};
+	private static final double[] WG = {0.129484966168869693270611432679082, 0.279705391489276667901467771423780,
+			0.381830050505118944950369775488975, 0.417959183673469387755102040816327};
 	
 	protected double 	t0;
 	protected double 	t1;
@@ -148,24 +176,44 @@ public abstract class ParametricSurface3D extends Surface3D {
 	}
 	
 	/**
-	 * Checks which of the surface area calculations need to be called.
+	 * Checks which of the surface area calculations need to be called. The result is kept
+	 * until the numerical method or the bounds change, or {@link #parametersChanged()} is called.
 	 */
 	@Override
 	public double surfaceArea() {
-		if (trapezoid) {
-			return surfaceAreaTrap();
+		if (!Double.isNaN(area) && method.equals(areaMethod) && areaBounds[0] == t0 && areaBounds[1] == t1
+				&& areaBounds[2] == s0 && areaBounds[3] == s1) {
+			return area;
+		}
+		String m = method;
+		double a;
+		if (m.equals(TRAPEZOID)) {
+			a = surfaceAreaTrap();
+		} else if (m.equals(SIMPSON)) {
+			a = surfaceAreaSimp();
 		} else {
-			return surfaceAreaSimp();
-		}	
+			a = surfaceAreaGaussKronrod();
+		}
+		area = a;
+		areaMethod = m;
+		areaBounds[0] = t0;
+		areaBounds[1] = t1;
+		areaBounds[2] = s0;
+		areaBounds[3] = s1;
+		return a;
+	}
+	
+	/**
+	 * Drops the remembered surface area; subclasses call this when a parameter of the
+	 * surface changes.
+	 */
+	protected void parametersChanged() {
+		area = Double.NaN;
 	}
 	
 	private double surfaceAreaTrap() {
 		double[] It = new double[INTEGRATION_STEPS_TRAP + 1];
-		double stepsize = (t1-t0)/INTEGRATION_STEPS_TRAP;
-		for(int i = 0; i < It.length; i++) {
-			double valS = s0 + (s1 - s0)/INTEGRATION_STEPS_TRAP*i;
-			It[i] = trapezoid(stepsize, valS, t0, t1);
-		}
+		new AreaPass(TRAPEZOID, It).run(parallel);
 		double Ifin = 0;
 		for (int i = 0; i < It.length; i++) {
 			if (i == 0 || (i == It.length - 1)) {
@@ -181,11 +229,7 @@ public abstract class ParametricSurface3D extends Surface3D {
 	
 	private double surfaceAreaSimp() {
 		double[] It = new double[INTEGRATION_STEPS_SIMP + 1];
-		double stepsize = (t1 - t0)/INTEGRATION_STEPS_SIMP;
-		for(int i = 0; i < It.length; i++) {
-			double valS = s0 + (s1 - s0)/INTEGRATION_STEPS_SIMP*i;
-			It[i] = simpson(stepsize, valS, t0, t1);
-		}
+		new AreaPass(SIMPSON, It).run(parallel);
 		
 		double Ifin = 0;
 		for (int i = 0; i < It.length; i++) {
@@ -202,36 +246,148 @@ public abstract class ParametricSurface3D extends Surface3D {
 		return Ifin * (((s1 - s0)/INTEGRATION_STEPS_SIMP)/3);
 	}
 	
-	private double trapezoid(double step, double x, double t0, double tn) {
-		double I = 0;
+	/**
+	 * Integrates the area element adaptively with the Gauss-Kronrod 7-15 rule in both
+	 * directions, to a relative error of about AREA_TOLERANCE. The s-range is cut into
+	 * panels which are integrated in parallel and added up in order.
+	 */
+	private double surfaceAreaGaussKronrod() {
+		double[] panels = new double[AREA_PANELS];
+		new AreaPass(GAUSS_KRONROD, panels).run(parallel);
+		double sum = 0;
+		for (double p : panels) {
+			sum += p;
+		}
+		return sum;
+	}
+	
+	/**
+	 * Integrates over [a, b] by bisection until the Kronrod and Gauss estimates of every
+	 * part agree within the tolerance, which is halved with every bisection. A NaN tolerance
+	 * is replaced by AREA_TOLERANCE relative to the first estimate.
+	 * @param outer true to integrate the inner integrals over s, false to integrate the area
+	 * element over t at s = fixed.
+	 */
+	private double kronrod(boolean outer, double fixed, double a, double b, double tol, int depth, AreaWork w) {
+		double c = 0.5 * (a + b);
+		double h = 0.5 * (b - a);
+		//f holds the integrand at c, then at c - h x and c + h x for every abscissa x
+		double[] f;
+		if (outer) {
+			f = new double[15];
+			f[0] = kronrod(false, c, t0, t1, Double.NaN, 0, w);
+			for (int i = 0; i < 7; i++) {
+				f[1 + 2 * i] = kronrod(false, c - h * XGK[i], t0, t1, Double.NaN, 0, w);
+				f[2 + 2 * i] = kronrod(false, c + h * XGK[i], t0, t1, Double.NaN, 0, w);
+			}
+		} else {
+			w.size(15);
+			w.t[0] = c;
+			for (int i = 0; i < 7; i++) {
+				w.t[1 + 2 * i] = c - h * XGK[i];
+				w.t[2 + 2 * i] = c + h * XGK[i];
+			}
+			Arrays.fill(w.s, fixed);
+			areaElements(w);
+			f = w.norm;
+		}
+		double k = WGK[7] * f[0];
+		double g = WG[3] * f[0];
+		for (int i = 0; i < 7; i++) {
+			double sum = f[1 + 2 * i] + f[2 + 2 * i];
+			k += WGK[i] * sum;
+			if (i % 2 == 1) {
+				g += WG[i / 2] * sum;
+			}
+		}
+		k *= h;
+		g *= h;
+		if (Double.isNaN(tol)) {
+			tol = AREA_TOLERANCE * Math.abs(k) + Double.MIN_NORMAL;
+		}
+		if (depth >= AREA_DEPTH || Math.abs(k - g) <= tol) {
+			return k;
+		}
+		return kronrod(outer, fixed, a, c, 0.5 * tol, depth + 1, w) + kronrod(outer, fixed, c, b, 0.5 * tol, depth + 1, w);
+	}
+	
+	/**
+	 * Evaluates the length of the cross product of the partial derivatives R_t and R_s at
+	 * the parameters in the work arrays, in one batch.
+	 */
+	private void areaElements(AreaWork w) {
+		evaluate(w.t, w.s, null, w.dt, w.ds);
+		crossNorms(w);
+	}
+	
+	/**
+	 * Evaluates the length of the cross product of R_t and R_s at the nodes of a t-axis and
+	 * the given s, as one row of a grid.
+	 */
+	private void areaElements(GridAxis nodes, double s, AreaWork w) {
+		w.size(nodes.size());
+		evaluateGrid(nodes, 0, nodes.size(), new GridAxis(new double[] {s}), null, w.dt, w.ds);
+		crossNorms(w);
+	}
+	
+	private static void crossNorms(AreaWork w) {
+		for (int k = 0, o = 0; k < w.norm.length; k++, o += 3) {
+			double cx = w.dt[o + 1] * w.ds[o + 2] - w.dt[o + 2] * w.ds[o + 1];
+			double cy = w.dt[o + 2] * w.ds[o] - w.dt[o] * w.ds[o + 2];
+			double cz = w.dt[o] * w.ds[o + 1] - w.dt[o + 1] * w.ds[o];
+			w.norm[k] = Math.sqrt(cx * cx + cy * cy + cz * cz);
+		}
+	}
+	
+	/**
+	 * Returns the nodes of the trapezoidal rule over [t0, tn], built by adding up the steps.
+	 */
+	private static GridAxis trapezoidNodes(double step, double t0, double tn) {
+		int n = 0;
+		for(double i = t0; i <= tn + 10E-14; i+=step) {
+			n++;
+		}
+		double[] nodes = new double[n];
+		int k = 0;
 		for(double i = t0; i <= tn + 10E-14; i+=step) {
+			nodes[k++] = i;
+		}
+		return new GridAxis(nodes);
+	}
+	
+	private double trapezoid(double step, double x, double t0, double tn, GridAxis nodes, AreaWork w) {
+		areaElements(nodes, x, w);
+		double[] t = nodes.values();
+		double I = 0;
+		for(int k = 0; k < t.length; k++) {
+			double i = t[k];
 			if(i==t0 || (i <= tn + 10E-14 && i >= tn - 10E-14)) {
-				Vector3D Rt = computeRt(i, x); 
-				Vector3D Rs = computeRs(i, x);
-				Vector3D R = Rt.crossProduct(Rs);
-				double norm = R.getNorm();
-				I += 0.5 * norm;
+				I += 0.5 * w.norm[k];
 			}
 			else {
-				Vector3D Rt = computeRt(i, x); 
-				Vector3D Rs = computeRs(i, x);
-				Vector3D R = Rt.crossProduct(Rs);
-				double norm = R.getNorm();
-				I += norm;
+				I += w.norm[k];
 			}
 				
 		}
 		return step * I;
 	}
+	
+	/**
+	 * Returns the INTEGRATION_STEPS_SIMP + 1 nodes t0 + i step of Simpson's rule.
+	 */
+	private static GridAxis simpsonNodes(double step, double t0) {
+		double[] nodes = new double[INTEGRATION_STEPS_SIMP + 1];
+		for(int i = 0; i < INTEGRATION_STEPS_SIMP + 1; i++) {
+			nodes[i] = t0 + step * i;
+		}
+		return new GridAxis(nodes);
+	}
 
-	private double simpson(double step, double x, double t0, double tn) {
+	private double simpson(double step, double x, GridAxis nodes, AreaWork w) {
+		areaElements(nodes, x, w);
 		double Is = 0;
 		for(int i = 0; i < INTEGRATION_STEPS_SIMP + 1; i++) {
-			double it = t0 + step * i;
-			Vector3D Rt = computeRt(it, x); 
-			Vector3D Rs = computeRs(it, x);
-			Vector3D R = Rt.crossProduct(Rs);
-			double norm = R.getNorm();
+			double norm = w.norm[i];
 			if(i == 0 || i == INTEGRATION_STEPS_SIMP) {
 				Is += norm;
 			}
@@ -247,30 +403,200 @@ public abstract class ParametricSurface3D extends Surface3D {
 	}
 	
 	/**
-	 * Constructs and returns the faces of the parametric surface.
+	 * Evaluates the surface and its partial derivatives at the points (t[k], s[k]) in one
+	 * call. Subclasses override this to share terms between the coordinates and the
+	 * derivatives of a point; this version calls the compute methods one by one.
+	 * @param t First parameters of the points.
+	 * @param s Second parameters of the points, as many as t.
+	 * @param outXYZ Receives x, y and z of every point, 3 * t.length values, or null.
+	 * @param outDt Receives the derivatives with respect to t, laid out like outXYZ, or null.
+	 * @param outDs Receives the derivatives with respect to s, laid out like outXYZ, or null.
+	 */
+	public void evaluate(double[] t, double[] s, double[] outXYZ, double[] outDt, double[] outDs) {
+		for (int k = 0, o = 0; k < t.length; k++, o += 3) {
+			if (outXYZ != null) {
+				outXYZ[o] = computeX(t[k], s[k]);
+				outXYZ[o + 1] = computeY(t[k], s[k]);
+				outXYZ[o + 2] = computeZ(t[k], s[k]);
+			}
+			if (outDt != null) {
+				outDt[o] = computeXt(t[k], s[k]);
+				outDt[o + 1] = computeYt(t[k], s[k]);
+				outDt[o + 2] = computeZt(t[k], s[k]);
+			}
+			if (outDs != null) {
+				outDs[o] = computeXs(t[k], s[k]);
+				outDs[o + 1] = computeYs(t[k], s[k]);
+				outDs[o + 2] = computeZs(t[k], s[k]);
+			}
+		}
+	}
+	
+	/**
+	 * Evaluates the surface and its partial derivatives on the rows from to to - 1 of the
+	 * grid of the parameters t x s. Sample (i, j) is written at 3 (i s.size() + j) of every
+	 * output that is not null; the other entries are left alone. Subclasses whose terms are
+	 * products of functions of t and of s override this to take those from the tables of the
+	 * axes; this version evaluates the rows one by one.
+	 * @param t Axis of the first parameter, one row per value.
+	 * @param from First row to evaluate.
+	 * @param to Row after the last one.
+	 * @param s Axis of the second parameter.
+	 * @param outXYZ Receives x, y and z of the samples, or null.
+	 * @param outDt Receives the derivatives with respect to t, or null.
+	 * @param outDs Receives the derivatives with respect to s, or null.
+	 */
+	public void evaluateGrid(GridAxis t, int from, int to, GridAxis s, double[] outXYZ, double[] outDt, double[] outDs) {
+		int cols = s.size();
+		double[] row = new double[cols];
+		double[] xyz = outXYZ == null ? null : new double[3 * cols];
+		double[] dt = outDt == null ? null : new double[3 * cols];
+		double[] ds = outDs == null ? null : new double[3 * cols];
+		for (int i = from; i < to; i++) {
+			Arrays.fill(row, t.values()[i]);
+			evaluate(row, s.values(), xyz, dt, ds);
+			if (xyz != null) {
+				System.arraycopy(xyz, 0, outXYZ, 3 * i * cols, xyz.length);
+			}
+			if (dt != null) {
+				System.arraycopy(dt, 0, outDt, 3 * i * cols, dt.length);
+			}
+			if (ds != null) {
+				System.arraycopy(ds, 0, outDs, 3 * i * cols, ds.length);
+			}
+		}
+	}
+	
+	/**
+	 * Constructs and returns the faces of the parametric surface. Neighbouring faces share
+	 * their corner objects.
 	 * @return the faces of the parametric surface.
 	 */
 	@Override
 	public ArrayList<Triangle3D> triangulate() {
-		ArrayList<Triangle3D> tmp = new ArrayList<>();
-		for (double t = t0; t < t1 - 10E-14; t += (t1 - t0)/n1) {
-	    	for (double s = s0; s < s1 - 10E-14; s += (s1 - s0)/n2) {
-	    		Triangle3D tr = new Triangle3D(new Point3D(computeX(t, s), computeY(t, s), computeZ(t, s)),
-	    				new Point3D(computeX(t + (t1 - t0)/n1, s), computeY(t + (t1 - t0)/n1, s), computeZ(t + (t1 - t0)/n1, s)),
-	    				new Point3D(computeX(t, s + (s1 - s0)/n2), computeY(t, s + (s1 - s0)/n2), computeZ(t, s + (s1 - s0)/n2)));
-	    		tmp.add(tr);
-	    	}
-	    }
-		
-		for (double t = t1; t > t0 + 10E-14; t -= (t1 - t0)/n1) {
-	    	for (double s = s1; s > s0 + 10E-14; s -= (s1 - s0)/n2) {
-	    		Triangle3D tr = new Triangle3D(new Point3D(computeX(t, s), computeY(t, s), computeZ(t, s)),
-	    				new Point3D(computeX(t - (t1 - t0)/n1, s), computeY(t - (t1 - t0)/n1, s), computeZ(t - (t1 - t0)/n1, s)),
-	    				new Point3D(computeX(t, s - (s1 - s0)/n2), computeY(t, s - (s1 - s0)/n2), computeZ(t, s - (s1 - s0)/n2)));
-	    		tmp.add(tr);
-	    	}
-	    }
-		return tmp;
+		return triangulate(0);
+	}
+	
+	/**
+	 * Returns the number of levels of detail: the resolution is halved from level to level
+	 * as long as both directions keep at least LOD_MIN_INTERVALS intervals.
+	 * @return the number of levels.
+	 */
+	@Override
+	public int lodLevels() {
+		int levels = 1;
+		while ((Math.min(n1, n2) >> levels) >= LOD_MIN_INTERVALS) {
+			levels++;
+		}
+		return levels;
+	}
+	
+	/**
+	 * Constructs and returns the faces of a level of detail, the grid of n1 / 2^level by
+	 * n2 / 2^level intervals. Neighbouring faces share their corner objects.
+	 * @param level the level, 0 for the full resolution.
+	 * @return the faces of the level.
+	 */
+	@Override
+	public ArrayList<Triangle3D> triangulate(int level) {
+		int l = Math.max(0, Math.min(level, lodLevels() - 1));
+		int m1 = n1 >> l;
+		int m2 = n2 >> l;
+		IndexedMesh mesh = tessellate(m1, m2, false);
+		Point3D[] points = new Point3D[mesh.vertexCount()];
+		new GridPass(POINT_ROWS, m1, m2, mesh.coordinates(), null, null, points, null).run(parallel);
+		Triangle3D[] faces = new Triangle3D[mesh.faceCount()];
+		new GridPass(FACE_ROWS, m1, m2, null, null, mesh.triangles(), points, faces).run(parallel);
+		return new ArrayList<>(Arrays.asList(faces));
+	}
+	
+	/**
+	 * Samples the surface on its (n1 + 1) x (n2 + 1) parameter grid and returns the grid as an
+	 * indexed mesh. Every sample is evaluated once: sample (i, j), at t = t0 + i (t1 - t0) / n1
+	 * and s = s0 + j (s1 - s0) / n2, is vertex i (n2 + 1) + j. The lower triangle of every cell
+	 * comes first, going up in t and s, followed by the upper triangles going down. The mesh
+	 * carries the unit normals R_t x R_s of the samples.
+	 * @return the indexed grid.
+	 */
+	public IndexedMesh tessellate() {
+		return tessellate(n1, n2, true);
+	}
+	
+	/**
+	 * Tessellates the surface like tessellate(), on a grid of another resolution. The axes of
+	 * the last grid are kept with their sine and cosine tables, so a new resolution only
+	 * rebuilds the tables of the axes which changed.
+	 * @param n1 number of intervals along t.
+	 * @param n2 number of intervals along s.
+	 * @return the indexed grid.
+	 */
+	public IndexedMesh tessellate(int n1, int n2) {
+		return tessellate(n1, n2, true);
+	}
+	
+	private IndexedMesh tessellate(int m1, int m2, boolean normals) {
+		double[] n = normals ? new double[3 * (m1 + 1) * (m2 + 1)] : null;
+		double[] xyz = sampleGrid(m1, m2, n);
+		int[] tri = new int[6 * m1 * m2];
+		new GridPass(INDEX_ROWS, m1, m2, null, null, tri, null, null).run(parallel);
+		IndexedMesh mesh = new IndexedMesh(xyz, (m1 + 1) * (m2 + 1), tri, 2 * m1 * m2);
+		mesh.setNormals(n);
+		return mesh;
+	}
+	
+	/**
+	 * Evaluates the surface once at every sample of the m1 x m2 grid, in blocks of rows along t.
+	 * @param normals array receiving the unit normals of the samples, or null.
+	 * @return x, y and z of the samples.
+	 */
+	private double[] sampleGrid(int m1, int m2, double[] normals) {
+		double[] xyz = new double[3 * (m1 + 1) * (m2 + 1)];
+		new GridPass(SAMPLE_ROWS, m1, m2, xyz, normals, null, null, null).run(parallel);
+		return xyz;
+	}
+	
+	/**
+	 * Returns the regular axis of n intervals over [start, end]: the last one if it is the
+	 * same, so that its tables are reused, and a new one otherwise.
+	 */
+	private static GridAxis axis(GridAxis last, double start, double end, int n) {
+		return last != null && last.isRegular(start, end, n) ? last : new GridAxis(start, end, n);
+	}
+	
+	/**
+	 * Replaces the derivatives R_t and R_s of sample k, at (t, s), by the unit normal, which
+	 * is written over R_t. Where the surface is degenerate, as at a collapsed edge, the normal
+	 * is taken slightly inside the domain.
+	 */
+	private void unitNormal(double[] n, double[] ds, int k, double t, double s) {
+		int o = 3 * k;
+		double nx = n[o + 1] * ds[o + 2] - n[o + 2] * ds[o + 1];
+		double ny = n[o + 2] * ds[o] - n[o] * ds[o + 2];
+		double nz = n[o] * ds[o + 1] - n[o + 1] * ds[o];
+		double len = Math.sqrt(nx * nx + ny * ny + nz * nz);
+		for (double shift = 1e-8; len == 0 && shift < 1e-2; shift *= 100) {
+			double ts = t + (0.5 * (t0 + t1) - t) * shift;
+			double ss = s + (0.5 * (s0 + s1) - s) * shift;
+			Vector3D c = computeRt(ts, ss).crossProduct(computeRs(ts, ss));
+			nx = c.getX();
+			ny = c.getY();
+			nz = c.getZ();
+			len = c.getNorm();
+		}
+		if (len == 0) {
+			len = 1;
+		}
+		n[o] = nx / len;
+		n[o + 1] = ny / len;
+		n[o + 2] = nz / len;
+	}
+	
+	/**
+	 * Returns the number of rows of a grid pass: samples for the passes over samples, cells
+	 * for those over cells.
+	 */
+	private static int rows(int stage, int m1) {
+		return stage == SAMPLE_ROWS || stage == POINT_ROWS ? m1 + 1 : m1;
 	}
 	
 	/**
@@ -279,13 +605,218 @@ public abstract class ParametricSurface3D extends Surface3D {
 	 */
 	@Override
 	public ArrayList<Point3D> vertices() {
-		ArrayList<Point3D> tmp = new ArrayList<>();
-		for (double t = t0; t <= t1 + 10E-14; t += (t1 - t0)/n1) {
-	    	for (double s = s0; s <= s1 + 10E-14; s += (s1 - s0)/n2) {
-	    		tmp.add(new Point3D(computeX(t, s), computeY(t, s), computeZ(t, s)));
-	    	}
+		double[] xyz = sampleGrid(n1, n2, null);
+		Point3D[] points = new Point3D[xyz.length / 3];
+		new GridPass(POINT_ROWS, n1, n2, xyz, null, null, points, null).run(parallel);
+		return new ArrayList<>(Arrays.asList(points));
+	}
+	
+	/**
+	 * Enables or disables the evaluation of the grid on the common fork-join pool. Every
+	 * row is computed the same way either way, so the result does not change. Subclasses
+	 * whose compute methods are not thread safe should disable it.
+	 * @param parallel true to evaluate in parallel.
+	 */
+	public void setParallel(boolean parallel) {
+		this.parallel = parallel;
+	}
+	
+	/**
+	 * Writes the two triangles of every cell of row i: the lower ones at the start of the
+	 * index array, the upper ones, in reverse order, in its second half.
+	 */
+	private static void indexRow(int i, int m1, int m2, int[] tri) {
+		int cols = m2 + 1;
+		for (int j = 0; j < m2; j++) {
+			int v = i * cols + j;
+			int f = 3 * (i * m2 + j);
+			tri[f] = v;
+			tri[f + 1] = v + cols;
+			tri[f + 2] = v + 1;
+			int w = v + cols + 1;
+			int g = 3 * (m1 * m2 + (m1 - 1 - i) * m2 + m2 - 1 - j);
+			tri[g] = w;
+			tri[g + 1] = w - cols;
+			tri[g + 2] = w - 1;
+		}
+	}
+	
+	/**
+	 * Work arrays for the batch evaluation of area elements, reused by one thread.
+	 */
+	private static class AreaWork {
+		private double[] t = new double[0];
+		private double[] s;
+		private double[] dt;
+		private double[] ds;
+		private double[] norm;
+		
+		/**
+		 * Makes the arrays hold n points.
+		 * @param n number of points.
+		 */
+		void size(int n) {
+			if (t.length != n) {
+				t = new double[n];
+				s = new double[n];
+				dt = new double[3 * n];
+				ds = new double[3 * n];
+				norm = new double[n];
+			}
+		}
+	}
+	
+	private class AreaPass extends RangeAction {
+		private static final long serialVersionUID = 1L;
+		private String rule;
+		private double[] res;
+		private GridAxis nodes;
+		
+		/**
+		 * Creates the pass over the outer s-dimension of an area rule: the inner integrals at
+		 * the s-steps for the trapezoidal and Simpson's rule, the panels for Gauss-Kronrod.
+		 * @param rule the numerical method.
+		 * @param res array receiving one result per index.
+		 */
+		AreaPass(String rule, double[] res) {
+			super(0, res.length, Math.max(1, res.length / (8 * ForkJoinPool.getCommonPoolParallelism())));
+			this.rule = rule;
+			this.res = res;
+			if (rule.equals(TRAPEZOID)) {
+				nodes = trapezoidNodes((t1-t0)/INTEGRATION_STEPS_TRAP, t0, t1);
+			} else if (rule.equals(SIMPSON)) {
+				nodes = simpsonNodes((t1 - t0)/INTEGRATION_STEPS_SIMP, t0);
+			}
+		}
+		
+		private AreaPass(AreaPass pass, int from, int to, int grain) {
+			super(from, to, grain);
+			rule = pass.rule;
+			res = pass.res;
+			nodes = pass.nodes;
+		}
+		
+		@Override
+		protected void compute(int from, int to) {
+			AreaWork w = new AreaWork();
+			for (int i = from; i < to; i++) {
+				if (rule.equals(TRAPEZOID)) {
+					double valS = s0 + (s1 - s0)/INTEGRATION_STEPS_TRAP*i;
+					res[i] = trapezoid((t1-t0)/INTEGRATION_STEPS_TRAP, valS, t0, t1, nodes, w);
+				} else if (rule.equals(SIMPSON)) {
+					double valS = s0 + (s1 - s0)/INTEGRATION_STEPS_SIMP*i;
+					res[i] = simpson((t1 - t0)/INTEGRATION_STEPS_SIMP, valS, nodes, w);
+				} else {
+					double width = (s1 - s0) / res.length;
+					double a = s0 + i * width;
+					double b = i == res.length - 1 ? s1 : s0 + (i + 1) * width;
+					res[i] = kronrod(true, 0, a, b, Double.NaN, 0, w);
+				}
+			}
+		}
+		
+		@Override
+		protected RangeAction split(int from, int to, int grain) {
+			return new AreaPass(this, from, to, grain);
+		}
+	}
+	
+	private class GridPass extends RangeAction {
+		private static final long serialVersionUID = 1L;
+		private int stage;
+		private int m1;
+		private int m2;
+		private double[] xyz;
+		private double[] normals;
+		private double[] ds;
+		private int[] tri;
+		private Point3D[] points;
+		private Triangle3D[] faces;
+		private GridAxis t;
+		private GridAxis s;
+		
+		/**
+		 * Creates one of the passes over the rows of the m1 x m2 grid, with blocks of at least
+		 * a few thousand samples. The passes over samples have m1 + 1 rows, those over cells m1.
+		 * @param stage the pass.
+		 * @param m1 number of intervals along t.
+		 * @param m2 number of intervals along s.
+		 * @param normals array receiving the unit normals of the samples, or null.
+		 */
+		GridPass(int stage, int m1, int m2, double[] xyz, double[] normals, int[] tri, Point3D[] points, Triangle3D[] faces) {
+			super(0, rows(stage, m1), Math.max((ROW_GRAIN + m2) / (m2 + 1),
+					rows(stage, m1) / (8 * ForkJoinPool.getCommonPoolParallelism())));
+			this.stage = stage;
+			this.m1 = m1;
+			this.m2 = m2;
+			this.xyz = xyz;
+			this.normals = normals;
+			this.tri = tri;
+			this.points = points;
+			this.faces = faces;
+			if (stage == SAMPLE_ROWS) {
+				t = tAxis = axis(tAxis, t0, t1, m1);
+				s = sAxis = axis(sAxis, s0, s1, m2);
+				if (normals != null) {
+					ds = new double[normals.length];
+				}
+			}
+		}
+		
+		private GridPass(GridPass pass, int from, int to, int grain) {
+			super(from, to, grain);
+			stage = pass.stage;
+			m1 = pass.m1;
+			m2 = pass.m2;
+			xyz = pass.xyz;
+			normals = pass.normals;
+			ds = pass.ds;
+			tri = pass.tri;
+			points = pass.points;
+			faces = pass.faces;
+			t = pass.t;
+			s = pass.s;
+		}
+		
+		@Override
+		protected void compute(int from, int to) {
+			int cols = m2 + 1;
+			if (stage == SAMPLE_ROWS) {
+				evaluateGrid(t, from, to, s, xyz, normals, ds);
+				if (normals != null) {
+					for (int i = from; i < to; i++) {
+						for (int j = 0; j < cols; j++) {
+							unitNormal(normals, ds, i * cols + j, t.values()[i], s.values()[j]);
+						}
+					}
+				}
+				return;
+			}
+			for (int i = from; i < to; i++) {
+				if (stage == INDEX_ROWS) {
+					indexRow(i, m1, m2, tri);
+				} else if (stage == POINT_ROWS) {
+					for (int k = i * cols; k < (i + 1) * cols; k++) {
+						points[k] = new Point3D(xyz[3 * k], xyz[3 * k + 1], xyz[3 * k + 2]);
+					}
+				} else {
+					//the lower triangles of the row, then its upper ones in the second half
+					int lower = i * m2;
+					int upper = m1 * m2 + (m1 - 1 - i) * m2;
+					for (int f = lower; f < lower + m2; f++) {
+						faces[f] = new Triangle3D(points[tri[3 * f]], points[tri[3 * f + 1]], points[tri[3 * f + 2]]);
+					}
+					for (int f = upper; f < upper + m2; f++) {
+						faces[f] = new Triangle3D(points[tri[3 * f]], points[tri[3 * f + 1]], points[tri[3 * f + 2]]);
+					}
+				}
+			}
+		}
+		
+		@Override
+		protected RangeAction split(int from, int to, int grain) {
+			return new GridPass(this, from, to, grain);
 		}
-		return tmp;
 	}
 	
 	/**
@@ -302,6 +833,6 @@ public abstract class ParametricSurface3D extends Surface3D {
 	 * @param label String containing the approach.
 	 */
 	public static void switchNumericalMethod(String label) {
-		trapezoid = label.equals(TRAPEZOID);
+		method = label.equals(TRAPEZOID) || label.equals(GAUSS_KRONROD) ? label : SIMPSON;
 	}
 }
@@ -0,0 +1,629 @@
+package surfaces;
+
+/**
+ * Bounding volume hierarchy over the Bezier patches of a NURBS surface, used to project
+ * points and rays onto the surface. A patch lies inside the box of its control points
+ * (for positive weights), so subtrees whose box is further away than the best answer so
+ * far are skipped. Inside a patch a small grid of precomputed samples gives the start of
+ * a Newton iteration with the analytic derivatives of the patch.
+ * The tree keeps its work arrays, so it must not be queried by several threads at once.
+ */
+class PatchTree {
+
+     private static final int SAMPLES = 4;
+     private static final int MAX_ITERATIONS = 24;
+     private static final int HALVINGS = 12;
+     private static final double TOLERANCE = 1e-10;
+
+     private BezierPatch[] patches;
+     private double[] scale;
+     private double[] samples;
+     private double[] boxes;
+     private int[] child;
+     private int nodes;
+     private int depth;
+     private int[] stack;
+     private double[] keys;
+     private double[] work;
+     private double[] d = new double[18];
+     private double[] trial = new double[18];
+
+     /**
+      * Builds the hierarchy by splitting the patches at the median of their box centres,
+      * along the axis in which the centres are spread the most.
+      * @param p Patches indexed by U-span and V-span.
+      */
+     PatchTree(BezierPatch[][] p) {
+          int n = p.length * p[0].length;
+          int stride = 3 * (SAMPLES + 1) * (SAMPLES + 1);
+          patches = new BezierPatch[n];
+          scale = new double[n];
+          samples = new double[n * stride];
+          double[] patchBoxes = new double[6 * n];
+          int[] order = new int[n];
+          int workSize = 0;
+          for (int a = 0, k = 0; a < p.length; a++) {
+               for (int b = 0; b < p[0].length; b++, k++) {
+                    BezierPatch patch = p[a][b];
+                    patches[k] = patch;
+                    order[k] = k;
+                    workSize = Math.max(workSize, patch.workSize());
+                    hull(patch.getNet(), patchBoxes, 6 * k);
+                    scale[k] = diagonal(patchBoxes, 6 * k);
+                    for (int i = 0, o = k * stride; i <= SAMPLES; i++) {
+                         for (int j = 0; j <= SAMPLES; j++, o += 3) {
+                              patch.evaluateLocal(i / (double) SAMPLES, j / (double) SAMPLES, samples, o);
+                         }
+                    }
+               }
+          }
+          work = new double[workSize];
+          boxes = new double[6 * (2 * n - 1)];
+          child = new int[2 * n - 1];
+          nodes = 1;
+          build(0, order, 0, n, patchBoxes, 1);
+          stack = new int[depth + 2];
+          keys = new double[depth + 2];
+     }
+
+     private void build(int node, int[] order, int from, int to, double[] patchBoxes, int level) {
+          depth = Math.max(depth, level);
+          int o = 6 * node;
+          for (int c = 0; c < 3; c++) {
+               boxes[o + c] = Double.POSITIVE_INFINITY;
+               boxes[o + 3 + c] = Double.NEGATIVE_INFINITY;
+          }
+          double[] low = {Double.POSITIVE_INFINITY, Double.POSITIVE_INFINITY, Double.POSITIVE_INFINITY};
+          double[] high = {Double.NEGATIVE_INFINITY, Double.NEGATIVE_INFINITY, Double.NEGATIVE_INFINITY};
+          for (int i = from; i < to; i++) {
+               int b = 6 * order[i];
+               for (int c = 0; c < 3; c++) {
+                    boxes[o + c] = Math.min(boxes[o + c], patchBoxes[b + c]);
+                    boxes[o + 3 + c] = Math.max(boxes[o + 3 + c], patchBoxes[b + 3 + c]);
+                    double centre = patchBoxes[b + c] + patchBoxes[b + 3 + c];
+                    low[c] = Math.min(low[c], centre);
+                    high[c] = Math.max(high[c], centre);
+               }
+          }
+          if (to - from == 1) {
+               child[node] = -1 - order[from];
+               return;
+          }
+          int axis = 0;
+          for (int c = 1; c < 3; c++) {
+               if (high[c] - low[c] > high[axis] - low[axis]) axis = c;
+          }
+          int mid = (from + to) >>> 1;
+          select(order, from, to, mid, patchBoxes, axis);
+          int c = nodes;
+          nodes += 2;
+          child[node] = c;
+          build(c, order, from, mid, patchBoxes, level + 1);
+          build(c + 1, order, mid, to, patchBoxes, level + 1);
+     }
+
+     /**
+      * Reorders order[from, to) so that the patch at k has its centre in the right place
+      * along the axis, with no larger centres before and no smaller ones after it.
+      */
+     private static void select(int[] order, int from, int to, int k, double[] patchBoxes, int axis) {
+          int low = from;
+          int high = to - 1;
+          while (low < high) {
+               double pivot = centre(order[(low + high) >>> 1], patchBoxes, axis);
+               int i = low;
+               int j = high;
+               while (i <= j) {
+                    while (centre(order[i], patchBoxes, axis) < pivot) i++;
+                    while (centre(order[j], patchBoxes, axis) > pivot) j--;
+                    if (i <= j) {
+                         int swap = order[i];
+                         order[i] = order[j];
+                         order[j] = swap;
+                         i++;
+                         j--;
+                    }
+               }
+               if (k <= j)
+                    high = j;
+               else if (k >= i)
+                    low = i;
+               else
+                    break;
+          }
+     }
+
+     private static double centre(int patch, double[] patchBoxes, int axis) {
+          return patchBoxes[6 * patch + axis] + patchBoxes[6 * patch + 3 + axis];
+     }
+
+     /**
+      * Writes the box of the homogeneous control points, padded a little so that points
+      * found by Newton iteration on flat patches stay inside.
+      */
+     private static void hull(double[] net, double[] box, int o) {
+          for (int c = 0; c < 3; c++) {
+               box[o + c] = Double.POSITIVE_INFINITY;
+               box[o + 3 + c] = Double.NEGATIVE_INFINITY;
+          }
+          for (int k = 0; k < net.length; k += 4) {
+               for (int c = 0; c < 3; c++) {
+                    double x = net[k + c] / net[k + 3];
+                    box[o + c] = Math.min(box[o + c], x);
+                    box[o + 3 + c] = Math.max(box[o + 3 + c], x);
+               }
+          }
+          double pad = TOLERANCE * diagonal(box, o) + Double.MIN_NORMAL;
+          for (int c = 0; c < 3; c++) {
+               box[o + c] -= pad;
+               box[o + 3 + c] += pad;
+          }
+     }
+
+     private static double diagonal(double[] box, int o) {
+          double dx = box[o + 3] - box[o];
+          double dy = box[o + 4] - box[o + 1];
+          double dz = box[o + 5] - box[o + 2];
+          return Math.sqrt(dx * dx + dy * dy + dz * dz);
+     }
+
+     /**
+      * Finds the point of the surface closest to (px, py, pz).
+      * @param out Array receiving u, v, the x, y and z of the closest point and its distance.
+      */
+     void closest(double px, double py, double pz, double[] out) {
+          double best = Double.POSITIVE_INFINITY;
+          int top = 0;
+          stack[top] = 0;
+          keys[top++] = 0;
+          while (top > 0) {
+               top--;
+               int node = stack[top];
+               if (keys[top] >= best) continue;
+               int c = child[node];
+               if (c < 0) {
+                    best = closestOnPatch(-1 - c, px, py, pz, best, out);
+                    continue;
+               }
+               double da = boxDistance(c, px, py, pz);
+               double db = boxDistance(c + 1, px, py, pz);
+               //the nearer child is pushed last and so visited first
+               int near = da <= db ? c : c + 1;
+               double dn = Math.min(da, db);
+               double df = Math.max(da, db);
+               if (df < best) {
+                    stack[top] = near == c ? c + 1 : c;
+                    keys[top++] = df;
+               }
+               if (dn < best) {
+                    stack[top] = near;
+                    keys[top++] = dn;
+               }
+          }
+          out[5] = Math.sqrt(best);
+     }
+
+     private double boxDistance(int node, double px, double py, double pz) {
+          int o = 6 * node;
+          double dx = Math.max(0, Math.max(boxes[o] - px, px - boxes[o + 3]));
+          double dy = Math.max(0, Math.max(boxes[o + 1] - py, py - boxes[o + 4]));
+          double dz = Math.max(0, Math.max(boxes[o + 2] - pz, pz - boxes[o + 5]));
+          return dx * dx + dy * dy + dz * dz;
+     }
+
+     /**
+      * Minimizes the squared distance to the point over one patch. Every sample which is
+      * not further away than its neighbours starts a descent, and so do the samples around
+      * it, since the minimum may lie in any of the cells next to it. A minimum on an edge of
+      * the patch need not be a minimum of the patch, so every edge is also searched in the
+      * same way from the samples on it, and the corners are always tried.
+      * @return The new best squared distance.
+      */
+     private double closestOnPatch(int k, double px, double py, double pz, double best, double[] out) {
+          int side = SAMPLES + 1;
+          int o = 3 * k * side * side;
+          for (int i = 0; i < side; i++) {
+               for (int j = 0; j < side; j++) {
+                    double dist = sampleDistance(o, i, j, px, py, pz);
+                    if ((i > 0 && sampleDistance(o, i - 1, j, px, py, pz) < dist)
+                              || (i < SAMPLES && sampleDistance(o, i + 1, j, px, py, pz) < dist)
+                              || (j > 0 && sampleDistance(o, i, j - 1, px, py, pz) < dist)
+                              || (j < SAMPLES && sampleDistance(o, i, j + 1, px, py, pz) < dist)) {
+                         continue;
+                    }
+                    //the minimum may lie in any of the cells around the sample
+                    for (int a = Math.max(i - 1, 0); a <= Math.min(i + 1, SAMPLES); a++) {
+                         for (int b = Math.max(j - 1, 0); b <= Math.min(j + 1, SAMPLES); b++) {
+                              best = descend(patches[k], a / (double) SAMPLES, b / (double) SAMPLES, px, py, pz, best, out);
+                         }
+                    }
+               }
+          }
+          for (int e = 0; e < 4; e++) {
+               //edges s = 0, s = 1, t = 0 and t = 1, walked along the other parameter
+               boolean alongS = e >= 2;
+               int fixed = e % 2 == 0 ? 0 : SAMPLES;
+               for (int m = 0; m <= SAMPLES; m++) {
+                    int i = alongS ? m : fixed;
+                    int j = alongS ? fixed : m;
+                    double dist = sampleDistance(o, i, j, px, py, pz);
+                    if (m == 0 || m == SAMPLES) {
+                         best = keep(patches[k], i / (double) SAMPLES, j / (double) SAMPLES, px, py, pz, best, out);
+                    }
+                    if ((m > 0 && sampleDistance(o, alongS ? m - 1 : i, alongS ? j : m - 1, px, py, pz) < dist)
+                              || (m < SAMPLES && sampleDistance(o, alongS ? m + 1 : i, alongS ? j : m + 1, px, py, pz) < dist)) {
+                         continue;
+                    }
+                    //the minimum lies on either side of the sample, so walk in from the neighbours too
+                    for (int n = Math.max(m - 1, 0); n <= Math.min(m + 1, SAMPLES); n++) {
+                         double s = alongS ? n / (double) SAMPLES : i / (double) SAMPLES;
+                         double t = alongS ? j / (double) SAMPLES : n / (double) SAMPLES;
+                         best = descendEdge(patches[k], alongS, s, t, px, py, pz, best, out);
+                    }
+               }
+          }
+          return best;
+     }
+
+     /**
+      * Newton iteration for the squared distance along an edge of the patch from local
+      * parameters (s, t): s changes and t stays if alongS, the other way round otherwise.
+      * @return The new best squared distance.
+      */
+     private double descendEdge(BezierPatch patch, boolean alongS, double s, double t, double px, double py,
+                                double pz, double best, double[] out) {
+          double[] d = this.d;
+          double[] trial = this.trial;
+          //first and second derivative along the edge
+          int o1 = alongS ? 3 : 6;
+          int o2 = alongS ? 9 : 15;
+          patch.derivativesLocal(s, t, work, d);
+          double dist = square(d[0] - px, d[1] - py, d[2] - pz);
+
+          for (int it = 0; it < MAX_ITERATIONS; it++) {
+               double rx = d[0] - px;
+               double ry = d[1] - py;
+               double rz = d[2] - pz;
+               double f = rx * d[o1] + ry * d[o1 + 1] + rz * d[o1 + 2];
+               double a = square(d[o1], d[o1 + 1], d[o1 + 2]) + rx * d[o2] + ry * d[o2 + 1] + rz * d[o2 + 2];
+               if (f == 0) break;
+               //where the distance is concave Newton points the wrong way, a sample spacing downhill does not
+               double dx = a > 0 ? -f / a : (f > 0 ? -1.0 : 1.0) / SAMPLES;
+
+               boolean improved = false;
+               double moved = 0;
+               double step = 1;
+               for (int h = 0; h < HALVINGS && !improved; h++, step *= 0.5) {
+                    double s2 = alongS ? clamp(s + step * dx) : s;
+                    double t2 = alongS ? t : clamp(t + step * dx);
+                    patch.derivativesLocal(s2, t2, work, trial);
+                    double dist2 = square(trial[0] - px, trial[1] - py, trial[2] - pz);
+                    if (dist2 <= dist) {
+                         double[] swap = d;
+                         d = trial;
+                         trial = swap;
+                         moved = Math.abs(s2 - s) + Math.abs(t2 - t);
+                         s = s2;
+                         t = t2;
+                         dist = dist2;
+                         improved = true;
+                    }
+               }
+               if (!improved || moved < 1e-15) break;
+          }
+          return keep(patch, s, t, d, dist, best, out);
+     }
+
+     /**
+      * Takes the point at local parameters (s, t) if it is closer than the best one so far.
+      * @return The new best squared distance.
+      */
+     private double keep(BezierPatch patch, double s, double t, double px, double py, double pz,
+                         double best, double[] out) {
+          patch.derivativesLocal(s, t, work, d);
+          return keep(patch, s, t, d, square(d[0] - px, d[1] - py, d[2] - pz), best, out);
+     }
+
+     private static double keep(BezierPatch patch, double s, double t, double[] d, double dist,
+                                double best, double[] out) {
+          if (dist < best) {
+               out[0] = global(patch.getU0(), patch.getU1(), s);
+               out[1] = global(patch.getV0(), patch.getV1(), t);
+               out[2] = d[0];
+               out[3] = d[1];
+               out[4] = d[2];
+               return dist;
+          }
+          return best;
+     }
+
+     private double sampleDistance(int o, int i, int j, double px, double py, double pz) {
+          int k = o + 3 * (i * (SAMPLES + 1) + j);
+          return square(samples[k] - px, samples[k + 1] - py, samples[k + 2] - pz);
+     }
+
+     /**
+      * Newton iteration for the squared distance to the point from local parameters (s, t).
+      * Steps leaving the patch are clamped to its edges, and steps which do not bring the
+      * surface closer are halved.
+      * @return The new best squared distance.
+      */
+     private double descend(BezierPatch patch, double s, double t, double px, double py, double pz,
+                            double best, double[] out) {
+          double[] d = this.d;
+          double[] trial = this.trial;
+          patch.derivativesLocal(s, t, work, d);
+          double dist = square(d[0] - px, d[1] - py, d[2] - pz);
+
+          for (int it = 0; it < MAX_ITERATIONS; it++) {
+               double rx = d[0] - px;
+               double ry = d[1] - py;
+               double rz = d[2] - pz;
+               double f = rx * d[3] + ry * d[4] + rz * d[5];
+               double g = rx * d[6] + ry * d[7] + rz * d[8];
+               double ss = d[3] * d[3] + d[4] * d[4] + d[5] * d[5];
+               double st = d[3] * d[6] + d[4] * d[7] + d[5] * d[8];
+               double tt = d[6] * d[6] + d[7] * d[7] + d[8] * d[8];
+               double a = ss + rx * d[9] + ry * d[10] + rz * d[11];
+               double b = st + rx * d[12] + ry * d[13] + rz * d[14];
+               double c = tt + rx * d[15] + ry * d[16] + rz * d[17];
+               double det = a * c - b * b;
+               if (!(a > 0 && det > 0)) {
+                    //away from a minimum Newton may head for a saddle, Gauss-Newton does not
+                    a = ss;
+                    b = st;
+                    c = tt;
+                    det = a * c - b * b;
+                    if (!(det > 0)) break;
+               }
+               double ds = -(f * c - b * g) / det;
+               double dt = -(a * g - b * f) / det;
+               //on an edge of the patch where the distance falls outwards, slide along the edge
+               boolean edgeS = (s == 0 && f > 0) || (s == 1 && f < 0);
+               boolean edgeT = (t == 0 && g > 0) || (t == 1 && g < 0);
+               if (edgeS && edgeT) break;
+               if (edgeS) {
+                    ds = 0;
+                    dt = -g / (c > 0 ? c : tt);
+               } else if (edgeT) {
+                    dt = 0;
+                    ds = -f / (a > 0 ? a : ss);
+               }
+
+               boolean improved = false;
+               double moved = 0;
+               double step = 1;
+               for (int h = 0; h < HALVINGS && !improved; h++, step *= 0.5) {
+                    double s2 = clamp(s + step * ds);
+                    double t2 = clamp(t + step * dt);
+                    patch.derivativesLocal(s2, t2, work, trial);
+                    double dist2 = square(trial[0] - px, trial[1] - py, trial[2] - pz);
+                    if (dist2 <= dist) {
+                         double[] swap = d;
+                         d = trial;
+                         trial = swap;
+                         moved = Math.abs(s2 - s) + Math.abs(t2 - t);
+                         s = s2;
+                         t = t2;
+                         dist = dist2;
+                         improved = true;
+                    }
+               }
+               if (!improved || moved < 1e-15) break;
+          }
+          return keep(patch, s, t, d, dist, best, out);
+     }
+
+     /**
+      * Finds the first intersection of the ray o + t dir, t &gt;= 0, with the surface.
+      * @param out Array receiving u, v and t of the intersection.
+      * @return true if the ray hits the surface.
+      */
+     boolean intersect(double ox, double oy, double oz, double dx, double dy, double dz, double[] out) {
+          //the ray is the intersection of two planes through it, with unit normals n1 and n2
+          double[] n = new double[6];
+          double ax = Math.abs(dx);
+          double ay = Math.abs(dy);
+          double az = Math.abs(dz);
+          if (ax <= ay && ax <= az)
+               cross(dx, dy, dz, 1, 0, 0, n, 0);
+          else if (ay <= az)
+               cross(dx, dy, dz, 0, 1, 0, n, 0);
+          else
+               cross(dx, dy, dz, 0, 0, 1, n, 0);
+          cross(dx, dy, dz, n[0], n[1], n[2], n, 3);
+          double[] ray = {ox, oy, oz, dx, dy, dz};
+
+          double best = Double.POSITIVE_INFINITY;
+          int top = 0;
+          double entry = slab(0, ray);
+          if (entry == Double.POSITIVE_INFINITY) return false;
+          stack[top] = 0;
+          keys[top++] = entry;
+          while (top > 0) {
+               top--;
+               int node = stack[top];
+               if (keys[top] >= best) continue;
+               int c = child[node];
+               if (c < 0) {
+                    best = intersectPatch(-1 - c, ray, n, best, out);
+                    continue;
+               }
+               double ta = slab(c, ray);
+               double tb = slab(c + 1, ray);
+               int near = ta <= tb ? c : c + 1;
+               double tn = Math.min(ta, tb);
+               double tf = Math.max(ta, tb);
+               if (tf < best) {
+                    stack[top] = near == c ? c + 1 : c;
+                    keys[top++] = tf;
+               }
+               if (tn < best) {
+                    stack[top] = near;
+                    keys[top++] = tn;
+               }
+          }
+          return best != Double.POSITIVE_INFINITY;
+     }
+
+     /**
+      * Returns the ray parameter at which the ray enters the box of a node, or infinity
+      * if it misses the box.
+      */
+     private double slab(int node, double[] ray) {
+          int o = 6 * node;
+          double enter = 0;
+          double leave = Double.POSITIVE_INFINITY;
+          for (int c = 0; c < 3; c++) {
+               double origin = ray[c];
+               double dir = ray[3 + c];
+               double low = boxes[o + c];
+               double high = boxes[o + 3 + c];
+               if (dir == 0) {
+                    if (origin < low || origin > high) return Double.POSITIVE_INFINITY;
+                    continue;
+               }
+               double t0 = (low - origin) / dir;
+               double t1 = (high - origin) / dir;
+               enter = Math.max(enter, Math.min(t0, t1));
+               leave = Math.min(leave, Math.max(t0, t1));
+          }
+          return enter <= leave ? enter : Double.POSITIVE_INFINITY;
+     }
+
+     /**
+      * Intersects the ray with one patch. Every triangle of the sample grid which the ray
+      * hits gives a start for Newton iteration; without such a triangle the sample closest
+      * to the ray is tried.
+      * @return The new smallest ray parameter.
+      */
+     private double intersectPatch(int k, double[] ray, double[] n, double best, double[] out) {
+          int base = 3 * k * (SAMPLES + 1) * (SAMPLES + 1);
+          boolean seeded = false;
+          for (int i = 0; i < SAMPLES; i++) {
+               for (int j = 0; j < SAMPLES; j++) {
+                    int p00 = base + 3 * (i * (SAMPLES + 1) + j);
+                    int p01 = p00 + 3;
+                    int p10 = p00 + 3 * (SAMPLES + 1);
+                    int p11 = p10 + 3;
+                    double[] b = trial;
+                    if (triangle(ray, p00, p10, p01, b)) {
+                         seeded = true;
+                         best = rayOnPatch(k, (i + b[0]) / SAMPLES, (j + b[1]) / SAMPLES, ray, n, best, out);
+                    }
+                    if (triangle(ray, p10, p11, p01, b)) {
+                         seeded = true;
+                         best = rayOnPatch(k, (i + 1 - b[1]) / SAMPLES, (j + b[0] + b[1]) / SAMPLES, ray, n, best, out);
+                    }
+               }
+          }
+          if (!seeded) {
+               int m = 0;
+               double nearest = Double.POSITIVE_INFINITY;
+               for (int i = 0, o = base; i < (SAMPLES + 1) * (SAMPLES + 1); i++, o += 3) {
+                    double e1 = n[0] * (samples[o] - ray[0]) + n[1] * (samples[o + 1] - ray[1]) + n[2] * (samples[o + 2] - ray[2]);
+                    double e2 = n[3] * (samples[o] - ray[0]) + n[4] * (samples[o + 1] - ray[1]) + n[5] * (samples[o + 2] - ray[2]);
+                    if (e1 * e1 + e2 * e2 < nearest) {
+                         nearest = e1 * e1 + e2 * e2;
+                         m = i;
+                    }
+               }
+               best = rayOnPatch(k, (m / (SAMPLES + 1)) / (double) SAMPLES, (m % (SAMPLES + 1)) / (double) SAMPLES,
+                         ray, n, best, out);
+          }
+          return best;
+     }
+
+     /**
+      * Intersects the ray with the sample triangle a, b, c (Moller-Trumbore). Hits just
+      * outside the triangle count as well, Newton iteration sorts them out.
+      * @param bary Receives the barycentric coordinates of b and c.
+      */
+     private boolean triangle(double[] ray, int a, int b, int c, double[] bary) {
+          double e1x = samples[b] - samples[a];
+          double e1y = samples[b + 1] - samples[a + 1];
+          double e1z = samples[b + 2] - samples[a + 2];
+          double e2x = samples[c] - samples[a];
+          double e2y = samples[c + 1] - samples[a + 1];
+          double e2z = samples[c + 2] - samples[a + 2];
+          double px = ray[4] * e2z - ray[5] * e2y;
+          double py = ray[5] * e2x - ray[3] * e2z;
+          double pz = ray[3] * e2y - ray[4] * e2x;
+          double det = e1x * px + e1y * py + e1z * pz;
+          if (det == 0) return false;
+          double tx = ray[0] - samples[a];
+          double ty = ray[1] - samples[a + 1];
+          double tz = ray[2] - samples[a + 2];
+          double u = (tx * px + ty * py + tz * pz) / det;
+          double qx = ty * e1z - tz * e1y;
+          double qy = tz * e1x - tx * e1z;
+          double qz = tx * e1y - ty * e1x;
+          double v = (ray[3] * qx + ray[4] * qy + ray[5] * qz) / det;
+          double slack = 0.05;
+          if (u < -slack || v < -slack || u + v > 1 + slack) return false;
+          bary[0] = Math.min(1, Math.max(0, u));
+          bary[1] = Math.min(1 - bary[0], Math.max(0, v));
+          return true;
+     }
+
+     /**
+      * Solves n1 . (S - o) = 0 and n2 . (S - o) = 0 on one patch by Newton iteration.
+      * @return The new smallest ray parameter.
+      */
+     private double rayOnPatch(int k, double s, double t, double[] ray, double[] n, double best, double[] out) {
+          BezierPatch patch = patches[k];
+          double[] d = this.d;
+          double tolerance = TOLERANCE * scale[k] + Double.MIN_NORMAL;
+          for (int it = 0; it <= MAX_ITERATIONS; it++) {
+               patch.derivativesLocal(s, t, work, d);
+               double rx = d[0] - ray[0];
+               double ry = d[1] - ray[1];
+               double rz = d[2] - ray[2];
+               double f = n[0] * rx + n[1] * ry + n[2] * rz;
+               double g = n[3] * rx + n[4] * ry + n[5] * rz;
+               if (f * f + g * g <= tolerance * tolerance) {
+                    double along = (rx * ray[3] + ry * ray[4] + rz * ray[5])
+                              / (ray[3] * ray[3] + ray[4] * ray[4] + ray[5] * ray[5]);
+                    if (along >= 0 && along < best) {
+                         out[0] = global(patch.getU0(), patch.getU1(), s);
+                         out[1] = global(patch.getV0(), patch.getV1(), t);
+                         out[2] = along;
+                         return along;
+                    }
+                    return best;
+               }
+               if (it == MAX_ITERATIONS) break;
+               double a = n[0] * d[3] + n[1] * d[4] + n[2] * d[5];
+               double b = n[0] * d[6] + n[1] * d[7] + n[2] * d[8];
+               double c = n[3] * d[3] + n[4] * d[4] + n[5] * d[5];
+               double e = n[3] * d[6] + n[4] * d[7] + n[5] * d[8];
+               double det = a * e - b * c;
+               if (det == 0) break;
+               s = clamp(s - (f * e - b * g) / det);
+               t = clamp(t - (a * g - c * f) / det);
+          }
+          return best;
+     }
+
+     private static void cross(double ax, double ay, double az, double bx, double by, double bz, double[] out, int o) {
+          double x = ay * bz - az * by;
+          double y = az * bx - ax * bz;
+          double z = ax * by - ay * bx;
+          double l = Math.sqrt(x * x + y * y + z * z);
+          out[o] = x / l;
+          out[o + 1] = y / l;
+          out[o + 2] = z / l;
+     }
+
+     private static double square(double x, double y, double z) {
+          return x * x + y * y + z * z;
+     }
+
+     private static double clamp(double s) {
+          return s < 0 ? 0 : s > 1 ? 1 : s;
+     }
+
+     private static double global(double t0, double t1, double s) {
+          return s == 1 ? t1 : t0 + s * (t1 - t0);
+     }
+}
@@ -0,0 +1,77 @@
+package surfaces;
+
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+/**
+ * Fork-join action over a range of indices. The range is halved until it is no larger
+ * than the grain, and every block is handed to {@link #compute(int, int)}. Blocks write
+ * to disjoint parts of preallocated arrays, so the result does not depend on the split.
+ */
+abstract class RangeAction extends RecursiveAction {
+	private static final long serialVersionUID = 1L;
+	private static final int MIN_GRAIN 			= 1024;
+
+	private int from;
+	private int to;
+	private int grain;
+
+	/**
+	 * Creates an action over a range, with a grain giving a few blocks per worker.
+	 * @param from first index.
+	 * @param to index after the last one.
+	 */
+	RangeAction(int from, int to) {
+		this(from, to, Math.max(MIN_GRAIN, (to - from) / (8 * ForkJoinPool.getCommonPoolParallelism())));
+	}
+
+	/**
+	 * Creates an action over a range.
+	 * @param from first index.
+	 * @param to index after the last one.
+	 * @param grain largest range processed without splitting.
+	 */
+	RangeAction(int from, int to, int grain) {
+		this.from = from;
+		this.to = to;
+		this.grain = grain;
+	}
+
+	/**
+	 * Processes a block of indices.
+	 * @param from first index.
+	 * @param to index after the last one.
+	 */
+	protected abstract void compute(int from, int to);
+
+	/**
+	 * Creates an action of the same kind over a part of the range.
+	 * @param from first index.
+	 * @param to index after the last one.
+	 * @param grain largest range processed without splitting.
+	 * @return the new action.
+	 */
+	protected abstract RangeAction split(int from, int to, int grain);
+
+	@Override
+	protected void compute() {
+		if (to - from <= grain) {
+			compute(from, to);
+		} else {
+			int mid = (from + to) >>> 1;
+			invokeAll(split(from, mid, grain), split(mid, to, grain));
+		}
+	}
+
+	/**
+	 * Processes the whole range, on the common pool or in the calling thread.
+	 * @param parallel true to split the range over the common pool.
+	 */
+	void run(boolean parallel) {
+		if (!parallel || to - from <= grain) {
+			compute(from, to);
+		} else {
+			ForkJoinPool.commonPool().invoke(this);
+		}
+	}
+}
@@ -133,4 +133,61 @@ public class Spiral extends ParametricSurface3D {
 	public double computeZs(double t, double s) {
 		return 1;
 	}
+
+	/**
+	 * Evaluates the spiral and its partial derivatives at a number of points, computing the
+	 * sine and cosine of the angle once per point.
+	 * @param t First parameters of the points.
+	 * @param s Second parameters of the points.
+	 * @param outXYZ Receives the coordinates of the points, or null.
+	 * @param outDt Receives the derivatives with respect to t, or null.
+	 * @param outDs Receives the derivatives with respect to s, or null.
+	 */
+	@Override
+	public void evaluate(double[] t, double[] s, double[] outXYZ, double[] outDt, double[] outDs) {
+		for (int k = 0, o = 0; k < t.length; k++, o += 3) {
+			put(t[k], s[k], Math.cos(2 * Math.PI * s[k]), Math.sin(2 * Math.PI * s[k]), o, outXYZ, outDt, outDs);
+		}
+	}
+
+	/**
+	 * Evaluates rows of a grid with the sines and cosines of the angle taken from the tables
+	 * of the s-axis, without any further trigonometric call.
+	 * @param t Axis of the first parameter.
+	 * @param from First row to evaluate.
+	 * @param to Row after the last one.
+	 * @param s Axis of the second parameter.
+	 * @param outXYZ Receives the coordinates of the samples, or null.
+	 * @param outDt Receives the derivatives with respect to t, or null.
+	 * @param outDs Receives the derivatives with respect to s, or null.
+	 */
+	@Override
+	public void evaluateGrid(GridAxis t, int from, int to, GridAxis s, double[] outXYZ, double[] outDt, double[] outDs) {
+		double[] c = s.cos(2 * Math.PI);
+		double[] sn = s.sin(2 * Math.PI);
+		int cols = s.size();
+		for (int i = from; i < to; i++) {
+			for (int j = 0, o = 3 * i * cols; j < cols; j++, o += 3) {
+				put(t.values()[i], s.values()[j], c[j], sn[j], o, outXYZ, outDt, outDs);
+			}
+		}
+	}
+
+	private static void put(double t, double s, double c, double sn, int o, double[] outXYZ, double[] outDt, double[] outDs) {
+		if (outXYZ != null) {
+			outXYZ[o] = t * c;
+			outXYZ[o + 1] = t * sn;
+			outXYZ[o + 2] = s;
+		}
+		if (outDt != null) {
+			outDt[o] = c;
+			outDt[o + 1] = sn;
+			outDt[o + 2] = 0;
+		}
+		if (outDs != null) {
+			outDs[o] = - 2 * Math.PI * t * sn;
+			outDs[o + 1] = 2 * Math.PI * t * c;
+			outDs[o + 2] = 1;
+		}
+	}
 }
@@ -0,0 +1,117 @@
+package surfaces;
+
+/**
+ * Kobbelt's sqrt(3) subdivision: a point is inserted in the centre of every triangle,
+ * the old vertices are relaxed and every interior edge is flipped to connect the centres
+ * of its two faces, which turns every triangle into three. An interior vertex of valence n
+ * moves to (1 - alpha) P + alpha / n times the sum of its neighbours, with
+ * alpha = (4 - 2 cos(2 pi / n)) / 9. Boundary vertices stay in place and every boundary
+ * edge forms one triangle with the centre of its face. The new vertices are the relaxed
+ * old vertices followed by the face centres.
+ */
+public class Sqrt3Subdivider extends Subdivider {
+	private static final int FACE_POINTS 	= 0;
+	private static final int VERTEX_POINTS 	= 1;
+	private static final int TRIANGLES 		= 2;
+
+	private IndexedMesh 	mesh;
+	private HalfEdgeMesh 	he;
+	private double[] 		p;
+	private int[] 			tri;
+	private int 			fBase;
+	private double[] 		res;
+	private int[] 			nTri;
+
+	@Override
+	public IndexedMesh subdivide(IndexedMesh mesh) {
+		this.mesh = mesh;
+		he = new HalfEdgeMesh(mesh);
+		int vNum = mesh.vertexCount();
+		int fNum = mesh.faceCount();
+		fBase = vNum;
+		p = mesh.coordinates();
+		tri = mesh.triangles();
+		res = new double[3 * (vNum + fNum)];
+		//one new triangle per boundary edge and two per interior edge
+		nTri = new int[9 * fNum];
+		mesh.adjacencyOffsets();
+
+		runPass(FACE_POINTS, fNum);
+		runPass(VERTEX_POINTS, vNum);
+		runPass(TRIANGLES, 3 * fNum);
+
+		IndexedMesh ans = new IndexedMesh(res, vNum + fNum, nTri, 3 * fNum);
+		this.mesh = null;
+		he = null;
+		p = null;
+		tri = null;
+		res = null;
+		nTri = null;
+		return ans;
+	}
+
+	@Override
+	protected void pass(int stage, int from, int to) {
+		switch (stage) {
+		case FACE_POINTS:
+			facePoints(from, to);
+			break;
+		case VERTEX_POINTS:
+			vertexPoints(from, to);
+			break;
+		default:
+			triangles(from, to);
+		}
+	}
+
+	private void facePoints(int from, int to) {
+		for (int f = from; f < to; f++) {
+			int a = 3 * tri[3 * f];
+			int b = 3 * tri[3 * f + 1];
+			int c = 3 * tri[3 * f + 2];
+			int o = 3 * (fBase + f);
+			for (int k = 0; k < 3; k++) {
+				res[o + k] = (p[a + k] + p[b + k] + p[c + k])/3;
+			}
+		}
+	}
+
+	private void vertexPoints(int from, int to) {
+		int[] boundary = new int[0];
+		int[] ring = new int[16];
+		for (int v = from; v < to; v++) {
+			int deg = mesh.faceDegree(v);
+			if (deg == 0 || boundaryNeighbours(he, v, boundary) > 0) {
+				System.arraycopy(p, 3 * v, res, 3 * v, 3);
+				continue;
+			}
+			if (ring.length < 2 * deg) {
+				ring = new int[2 * deg];
+			}
+			int n = ring(mesh, v, ring);
+			double alpha = (4 - 2 * Math.cos(2 * Math.PI / n)) / 9;
+			for (int k = 0; k < 3; k++) {
+				double sum = 0;
+				for (int i = 0; i < n; i++) {
+					sum += p[3 * ring[i] + k];
+				}
+				res[3 * v + k] = (1 - alpha) * p[3 * v + k] + alpha / n * sum;
+			}
+		}
+	}
+
+	/*
+	 * Every half-edge h from a to b in face f is replaced by one triangle: (a, c_g, c_f)
+	 * across an interior edge shared with face g, and (a, b, c_f) on the boundary. The two
+	 * halves of an interior edge thereby form the two triangles of the flipped edge.
+	 */
+	private void triangles(int from, int to) {
+		for (int h = from; h < to; h++) {
+			int g = he.opposite(h);
+			int t = 3 * h;
+			nTri[t] = he.origin(h);
+			nTri[t + 1] = g < 0 ? he.target(h) : fBase + he.face(g);
+			nTri[t + 2] = fBase + he.face(h);
+		}
+	}
+}
@@ -0,0 +1,154 @@
+package surfaces;
+
+/**
+ * Generic class for subdivision schemes working on indexed triangle meshes.
+ * Every level is computed from the half-edge structure of the previous one,
+ * so one level costs linear time in the number of faces.
+ */
+public abstract class Subdivider {
+	protected boolean parallel = false;
+
+	/**
+	 * Enables or disables parallel subdivision. The passes over faces, edges and vertices
+	 * are then split over the common fork-join pool; the result is the same as sequentially.
+	 * @param parallel true to subdivide in parallel.
+	 */
+	public void setParallel(boolean parallel) {
+		this.parallel = parallel;
+	}
+
+	/**
+	 * Subdivides the mesh once.
+	 * @param mesh the mesh, with coordinate-identical vertices already merged.
+	 * @return the subdivided mesh.
+	 */
+	public abstract IndexedMesh subdivide(IndexedMesh mesh);
+
+	/**
+	 * Subdivides a Face-Vertex polygon Mesh a number of times. Vertices with exactly the
+	 * same coordinates are merged first, so meshes stored as separate triangles are
+	 * treated as connected.
+	 * @param pm the mesh.
+	 * @param iterations amount of times the mesh should be subdivided.
+	 * @return newly formed FVPolygonMesh.
+	 */
+	public FVPolygonMesh subdivide(FVPolygonMesh pm, int iterations) {
+		IndexedMesh mesh = pm.toIndexedMesh().welded();
+		for (int i = 0; i < iterations; i++) {
+			mesh = subdivide(mesh);
+		}
+		return new FVPolygonMesh(mesh);
+	}
+
+	/**
+	 * Processes one pass of a level over a block of indices. Blocks of the same pass
+	 * may run concurrently and must only write their own entries.
+	 * @param stage the pass, as given to {@link #runPass(int, int)}.
+	 * @param from first index.
+	 * @param to index after the last one.
+	 */
+	protected abstract void pass(int stage, int from, int to);
+
+	/**
+	 * Runs a pass over the indices 0 to n - 1, in parallel if enabled.
+	 * @param stage the pass.
+	 * @param n number of indices.
+	 */
+	protected void runPass(int stage, int n) {
+		new Pass(stage, 0, n).run(parallel);
+	}
+
+	/**
+	 * Collects the edges on the boundary which meet at a vertex.
+	 * @param he the half-edge structure.
+	 * @param v the vertex.
+	 * @param out array receiving the other end of every boundary edge.
+	 * @return the number of boundary edges, which may exceed the length of out.
+	 */
+	static int boundaryNeighbours(HalfEdgeMesh he, int v, int[] out) {
+		IndexedMesh m = he.mesh();
+		int n = 0;
+		for (int i = 0; i < m.faceDegree(v); i++) {
+			int f = m.incidentFace(v, i);
+			for (int k = 0; k < 3; k++) {
+				int h = 3 * f + k;
+				if (he.isBoundary(h)) {
+					int other = -1;
+					if (he.origin(h) == v) {
+						other = he.target(h);
+					} else if (he.target(h) == v) {
+						other = he.origin(h);
+					}
+					if (other >= 0) {
+						if (n < out.length) {
+							out[n] = other;
+						}
+						n++;
+					}
+				}
+			}
+		}
+		return n;
+	}
+
+	/**
+	 * Collects the distinct vertices sharing a face with a vertex.
+	 * @param m the mesh.
+	 * @param v the vertex.
+	 * @param out array receiving the neighbours, at least 2 * faceDegree(v) long.
+	 * @return the number of neighbours.
+	 */
+	static int ring(IndexedMesh m, int v, int[] out) {
+		int n = 0;
+		for (int i = 0; i < m.faceDegree(v); i++) {
+			int f = m.incidentFace(v, i);
+			for (int k = 0; k < 3; k++) {
+				int w = m.corner(f, k);
+				if (w != v && !contains(out, n, w)) {
+					out[n++] = w;
+				}
+			}
+		}
+		return n;
+	}
+
+	static boolean contains(int[] arr, int n, int val) {
+		for (int i = 0; i < n; i++) {
+			if (arr[i] == val) {
+				return true;
+			}
+		}
+		return false;
+	}
+
+	private class Pass extends RangeAction {
+		private static final long serialVersionUID = 1L;
+		private int stage;
+
+		/**
+		 * Creates one of the passes of a subdivision level over a range.
+		 * @param stage the pass.
+		 * @param from first index.
+		 * @param to index after the last one.
+		 */
+		Pass(int stage, int from, int to) {
+			super(from, to);
+			this.stage = stage;
+		}
+
+		private Pass(int stage, int from, int to, int grain) {
+			super(from, to, grain);
+			this.stage = stage;
+		}
+
+		@Override
+		protected void compute(int from, int to) {
+			pass(stage, from, to);
+		}
+
+		@Override
+		protected RangeAction split(int from, int to, int grain) {
+			return new Pass(stage, from, to, grain);
+		}
+	}
+}
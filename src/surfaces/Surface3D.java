@@ -20,6 +20,25 @@ public abstract class Surface3D implements Labelizable{
 	 */
 	public abstract ArrayList<Triangle3D> triangulate();
 	
+	/**
+	 * Returns the number of levels of detail offered by triangulate(int). Level 0 is the
+	 * full triangulation; surfaces without coarser ones have only that level.
+	 * @return the number of levels, at least 1.
+	 */
+	public int lodLevels() {
+		return 1;
+	}
+	
+	/**
+	 * Make and return the faces of a level of detail. Every level is about half as fine
+	 * as the one before in each direction; levels past the last give the last one.
+	 * @param level the level, 0 for the full triangulation.
+	 * @return arraylist containing the faces.
+	 */
+	public ArrayList<Triangle3D> triangulate(int level) {
+		return triangulate();
+	}
+	
 	/**
 	 * Calculate the surface area of the surface.
 	 * @return the surface area.
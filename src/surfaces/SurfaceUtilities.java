@@ -6,6 +6,13 @@ import java.util.ArrayList;
  * Special pure fabrication class for spatial manipulating for surfaces. 
  */
 public abstract class SurfaceUtilities {
+	public static final String LEGACY_CC 		= "Clarkinator";
+	public static final String CATMULL_CLARK 	= "Catmull-Clark";
+	public static final String LOOP 			= "Loop";
+	public static final String SQRT3 			= "√3";
+	public static final String ADAPTIVE_CC 		= "Adaptive Catmull-Clark";
+	
+	private static final double FEATURE_ANGLE 	= Math.toRadians(20);
 	
 	/**
 	 * Rotates the model around the x-axis.
@@ -102,9 +109,102 @@ public abstract class SurfaceUtilities {
 	 * @return Newly formed FVPolygonMesh.
 	 */
 	public static FVPolygonMesh applyCCsubDivision(FVPolygonMesh pm, int iterations) {
+		return applyCCsubDivision(pm, iterations, false);
+	}
+	
+	/**
+	 * Applies the Catmull-Clark subdivision algorithm to the given 
+	 * FVPolygonMesh with a certain amount of iterations, optionally spreading
+	 * every level over all cores. The result does not depend on the number of threads.
+	 * @param pm The FVPolygonMesh.
+	 * @param iterations Amount of iterations.
+	 * @param parallel True to subdivide in parallel.
+	 * @return Newly formed FVPolygonMesh.
+	 */
+	public static FVPolygonMesh applyCCsubDivision(FVPolygonMesh pm, int iterations, boolean parallel) {
+		CatmullClarkSubdivider subdivider = new CatmullClarkSubdivider();
+		subdivider.setParallel(parallel);
+		return subdivider.subdivide(pm, iterations);
+	}
+	
+	/**
+	 * Applies the Catmull-Clark subdivision algorithm with the original
+	 * Clarkinator, which is much slower on large meshes.
+	 * @param pm The FVPolygonMesh.
+	 * @param iterations Amount of iterations.
+	 * @return Newly formed FVPolygonMesh.
+	 */
+	public static FVPolygonMesh applyLegacyCCsubDivision(FVPolygonMesh pm, int iterations) {
 		Clarkinator callumClark = new Clarkinator(pm);
 		callumClark.subdivide(iterations);
 		FVPolygonMesh ans = callumClark.getMesh();
 		return ans;
 	}
+	
+	/**
+	 * Applies Loop subdivision to the given FVPolygonMesh, which splits
+	 * every triangle into four per iteration.
+	 * @param pm The FVPolygonMesh.
+	 * @param iterations Amount of iterations.
+	 * @param parallel True to subdivide in parallel.
+	 * @return Newly formed FVPolygonMesh.
+	 */
+	public static FVPolygonMesh applyLoopSubdivision(FVPolygonMesh pm, int iterations, boolean parallel) {
+		LoopSubdivider subdivider = new LoopSubdivider();
+		subdivider.setParallel(parallel);
+		return subdivider.subdivide(pm, iterations);
+	}
+	
+	/**
+	 * Applies √3 subdivision to the given FVPolygonMesh, which splits
+	 * every triangle into three per iteration.
+	 * @param pm The FVPolygonMesh.
+	 * @param iterations Amount of iterations.
+	 * @param parallel True to subdivide in parallel.
+	 * @return Newly formed FVPolygonMesh.
+	 */
+	public static FVPolygonMesh applySqrt3Subdivision(FVPolygonMesh pm, int iterations, boolean parallel) {
+		Sqrt3Subdivider subdivider = new Sqrt3Subdivider();
+		subdivider.setParallel(parallel);
+		return subdivider.subdivide(pm, iterations);
+	}
+	
+	/**
+	 * Applies Catmull-Clark subdivision only where the mesh is curved or coarse,
+	 * closing the refined regions with transition triangles.
+	 * @param pm The FVPolygonMesh.
+	 * @param iterations Amount of iterations.
+	 * @param featureAngle Dihedral angle in radians above which faces are refined.
+	 * @param maxEdgeLength Faces with a longer edge are refined, infinity to disable.
+	 * @param parallel True to subdivide in parallel.
+	 * @return Newly formed FVPolygonMesh.
+	 */
+	public static FVPolygonMesh applyAdaptiveCCsubDivision(FVPolygonMesh pm, int iterations, 
+			double featureAngle, double maxEdgeLength, boolean parallel) {
+		AdaptiveCatmullClarkSubdivider subdivider = new AdaptiveCatmullClarkSubdivider(featureAngle, maxEdgeLength);
+		subdivider.setParallel(parallel);
+		return subdivider.subdivide(pm, iterations);
+	}
+	
+	/**
+	 * Applies the given subdivision scheme to the given FVPolygonMesh.
+	 * @param pm The FVPolygonMesh.
+	 * @param scheme CATMULL_CLARK, LEGACY_CC, LOOP, SQRT3 or ADAPTIVE_CC, the latter with a 20° feature angle.
+	 * @param iterations Amount of iterations.
+	 * @param parallel True to subdivide in parallel, ignored by LEGACY_CC.
+	 * @return Newly formed FVPolygonMesh.
+	 */
+	public static FVPolygonMesh applySubdivision(FVPolygonMesh pm, String scheme, int iterations, boolean parallel) {
+		if (scheme.equals(LOOP)) {
+			return applyLoopSubdivision(pm, iterations, parallel);
+		} else if (scheme.equals(SQRT3)) {
+			return applySqrt3Subdivision(pm, iterations, parallel);
+		} else if (scheme.equals(ADAPTIVE_CC)) {
+			return applyAdaptiveCCsubDivision(pm, iterations, FEATURE_ANGLE, Double.POSITIVE_INFINITY, parallel);
+		} else if (scheme.equals(LEGACY_CC)) {
+			return applyLegacyCCsubDivision(pm, iterations);
+		} else {
+			return applyCCsubDivision(pm, iterations, parallel);
+		}
+	}
 }
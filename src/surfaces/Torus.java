@@ -139,4 +139,63 @@ public class Torus extends ParametricSurface3D {
 	public double computeZs(double t, double s) {
 		return 0;
 	}
+
+	/**
+	 * Evaluates the torus and its partial derivatives at a number of points, computing the
+	 * sine and cosine of t and s once per point.
+	 * @param t First parameters of the points.
+	 * @param s Second parameters of the points.
+	 * @param outXYZ Receives the coordinates of the points, or null.
+	 * @param outDt Receives the derivatives with respect to t, or null.
+	 * @param outDs Receives the derivatives with respect to s, or null.
+	 */
+	@Override
+	public void evaluate(double[] t, double[] s, double[] outXYZ, double[] outDt, double[] outDs) {
+		for (int k = 0, o = 0; k < t.length; k++, o += 3) {
+			put(Math.cos(t[k]), Math.sin(t[k]), Math.cos(s[k]), Math.sin(s[k]), o, outXYZ, outDt, outDs);
+		}
+	}
+
+	/**
+	 * Evaluates rows of a grid with the sines and cosines taken from the tables of the axes,
+	 * without any further trigonometric call.
+	 * @param t Axis of the first parameter.
+	 * @param from First row to evaluate.
+	 * @param to Row after the last one.
+	 * @param s Axis of the second parameter.
+	 * @param outXYZ Receives the coordinates of the samples, or null.
+	 * @param outDt Receives the derivatives with respect to t, or null.
+	 * @param outDs Receives the derivatives with respect to s, or null.
+	 */
+	@Override
+	public void evaluateGrid(GridAxis t, int from, int to, GridAxis s, double[] outXYZ, double[] outDt, double[] outDs) {
+		double[] ct = t.cos(1);
+		double[] st = t.sin(1);
+		double[] cs = s.cos(1);
+		double[] ss = s.sin(1);
+		int cols = s.size();
+		for (int i = from; i < to; i++) {
+			for (int j = 0, o = 3 * i * cols; j < cols; j++, o += 3) {
+				put(ct[i], st[i], cs[j], ss[j], o, outXYZ, outDt, outDs);
+			}
+		}
+	}
+
+	private void put(double ct, double st, double cs, double ss, int o, double[] outXYZ, double[] outDt, double[] outDs) {
+		if (outXYZ != null) {
+			outXYZ[o] = R * cs + r * ct * cs;
+			outXYZ[o + 1] = R * ss + r * ct * ss;
+			outXYZ[o + 2] = r * st;
+		}
+		if (outDt != null) {
+			outDt[o] = r * cs * (- st);
+			outDt[o + 1] = r * (- st) * ss;
+			outDt[o + 2] = r * ct;
+		}
+		if (outDs != null) {
+			outDs[o] = R * (- ss) + r * ct * (- ss);
+			outDs[o + 1] = R * cs + r * ct * cs;
+			outDs[o + 2] = 0;
+		}
+	}
 }